@@ -0,0 +1,93 @@
+package org.janelia.saalfeldlab.fx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.janelia.saalfeldlab.fx.actions.ActionSet;
+import org.janelia.saalfeldlab.fx.event.KeyTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.event.Event;
+import javafx.scene.Group;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * Dispatch of a single event through the JavaFX handler chain of a node with one installed {@link ActionSet}.
+ * Half of the {@link org.janelia.saalfeldlab.fx.actions.Action}s pass their checks, none consume the event,
+ * so every action is evaluated on each dispatch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionSetDispatchBenchmark {
+
+	@Param({"1", "10", "100", "1000"})
+	public int numActions;
+
+	@Param({"false", "true"})
+	public boolean multiplexHandlers;
+
+	private Group node;
+
+	private MouseEvent moved;
+
+	private MouseEvent pressed;
+
+	private int triggered;
+
+	@Setup
+	public void setup() {
+
+		final KeyTracker keyTracker = new KeyTracker();
+		final ActionSet actionSet = new ActionSet("benchmark", () -> keyTracker, (Consumer<ActionSet>)set -> {
+			for (int i = 0; i < numActions; i++) {
+				final boolean valid = i % 2 == 0;
+				set.addMouseAction(MouseEvent.MOUSE_MOVED, action -> {
+					action.setConsume(false);
+					action.verify("every other action is valid", event -> valid);
+					action.onAction(event -> triggered++);
+				});
+			}
+		});
+		actionSet.setMultiplexHandlers(multiplexHandlers);
+
+		node = new Group();
+		ActionSet.installActionSet(node, actionSet);
+
+		moved = SyntheticEvents.mouseEvent(MouseEvent.MOUSE_MOVED, 1.0, 1.0);
+		pressed = SyntheticEvents.mouseEvent(MouseEvent.MOUSE_PRESSED, 1.0, 1.0);
+	}
+
+	/**
+	 * All actions can handle the event.
+	 */
+	@Benchmark
+	public int matchingEventType() {
+
+		Event.fireEvent(node, moved);
+		return triggered;
+	}
+
+	/**
+	 * No action can handle the event.
+	 */
+	@Benchmark
+	public int otherEventType() {
+
+		Event.fireEvent(node, pressed);
+		return triggered;
+	}
+}
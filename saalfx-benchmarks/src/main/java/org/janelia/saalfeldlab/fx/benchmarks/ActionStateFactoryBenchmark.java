@@ -0,0 +1,72 @@
+package org.janelia.saalfeldlab.fx.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.fx.actions.ActionState;
+import org.janelia.saalfeldlab.fx.actions.VerifiablePropertyActionState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kotlin.jvm.JvmClassMappingKt;
+import kotlin.jvm.functions.Function0;
+import kotlin.reflect.KFunction;
+
+/**
+ * Creating the {@link ActionState} for each {@code onActionWithState} invocation; the compiled
+ * {@link ActionState.Companion#factory(Class)}, compared with {@link KFunction#callBy} (which {@code newByReflection}
+ * used previously) and with calling the constructor directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionStateFactoryBenchmark {
+
+	public static class BenchmarkState extends VerifiablePropertyActionState {
+
+		public BenchmarkState() {
+
+			super();
+		}
+	}
+
+	private Function0<BenchmarkState> compiled;
+
+	private KFunction<BenchmarkState> constructor;
+
+	@Setup
+	public void setup() {
+
+		compiled = ActionState.Companion.factory(BenchmarkState.class);
+		constructor = JvmClassMappingKt.getKotlinClass(BenchmarkState.class).getConstructors().iterator().next();
+	}
+
+	@Benchmark
+	public BenchmarkState compiledFactory() {
+
+		return compiled.invoke();
+	}
+
+	@Benchmark
+	public BenchmarkState callBy() {
+
+		return constructor.callBy(Collections.emptyMap());
+	}
+
+	@Benchmark
+	public BenchmarkState directConstructor() {
+
+		return new BenchmarkState();
+	}
+}
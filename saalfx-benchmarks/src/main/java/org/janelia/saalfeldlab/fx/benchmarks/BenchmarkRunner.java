@@ -0,0 +1,154 @@
+package org.janelia.saalfeldlab.fx.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Runs the dispatch benchmarks, writes the results as JMH JSON, and compares them against a JSON baseline
+ * from a previous run. Exits with status 1 if any benchmark regressed by more than the tolerance.
+ * <p>
+ * Any regular JMH command line options are passed through, e.g. {@code -f 0 -wi 1 -i 1 KeyBinding} for a quick run
+ * of only the key binding benchmarks. Configured via system properties:
+ * <ul>
+ * <li>{@code saalfx.benchmarks.result}: result file, default {@code target/jmh-result.json}</li>
+ * <li>{@code saalfx.benchmarks.baseline}: baseline file, default {@code baseline/jmh-baseline.json}</li>
+ * <li>{@code saalfx.benchmarks.tolerance}: allowed relative regression, default {@code 0.2}</li>
+ * <li>{@code saalfx.benchmarks.updateBaseline}: if {@code true}, replace the baseline with the new results instead of comparing</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+
+	}
+
+	public static void main(final String... args) throws RunnerException, CommandLineOptionException, IOException {
+
+		final Path result = Paths.get(System.getProperty("saalfx.benchmarks.result", "target/jmh-result.json"));
+		final Path baseline = Paths.get(System.getProperty("saalfx.benchmarks.baseline", "baseline/jmh-baseline.json"));
+		final double tolerance = Double.parseDouble(System.getProperty("saalfx.benchmarks.tolerance", "0.2"));
+		final boolean updateBaseline = Boolean.getBoolean("saalfx.benchmarks.updateBaseline");
+
+		final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		final ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.resultFormat(ResultFormatType.JSON)
+				.result(result.toString());
+		if (commandLineOptions.getIncludes().isEmpty())
+			options.include(BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark");
+
+		createParentDirectories(result);
+		new Runner(options.build()).run();
+
+		if (updateBaseline) {
+			createParentDirectories(baseline);
+			Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+			System.out.println("Updated baseline " + baseline);
+			return;
+		}
+
+		if (!Files.exists(baseline)) {
+			System.out.println("No baseline at " + baseline + ". Run with -Dsaalfx.benchmarks.updateBaseline=true to create one.");
+			return;
+		}
+
+		final List<String> regressions = regressions(readScores(baseline), readScores(result), tolerance);
+		if (regressions.isEmpty()) {
+			System.out.println("No regressions against " + baseline);
+		} else {
+			System.err.println("Regressions against " + baseline + " (tolerance " + tolerance + "):");
+			regressions.forEach(it -> System.err.println("\t" + it));
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compare each benchmark that exists in both {@code baseline} and {@code current}. Benchmarks only present in one of them are ignored.
+	 *
+	 * @return a description of each benchmark that regressed by more than {@code tolerance}
+	 */
+	static List<String> regressions(final Map<String, Score> baseline, final Map<String, Score> current, final double tolerance) {
+
+		final List<String> regressions = new ArrayList<>();
+		current.forEach((key, score) -> {
+			final Score base = baseline.get(key);
+			if (base == null)
+				return;
+			final double relativeChange = (score.value - base.value) / base.value;
+			/* throughput is better when higher, all other modes report time, which is better when lower */
+			final boolean regressed = score.higherIsBetter ? relativeChange < -tolerance : relativeChange > tolerance;
+			if (regressed)
+				regressions.add(String.format("%s: %.3f -> %.3f %s (%+.1f%%)", key, base.value, score.value, score.unit, 100 * relativeChange));
+		});
+		return regressions;
+	}
+
+	/**
+	 * Read the primary scores from a JMH JSON result file.
+	 *
+	 * @return scores keyed by benchmark name and parameters
+	 */
+	static Map<String, Score> readScores(final Path jmhJson) throws IOException {
+
+		final Map<String, Score> scores = new LinkedHashMap<>();
+		try (final Reader reader = Files.newBufferedReader(jmhJson)) {
+			for (final JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+				final JsonObject run = element.getAsJsonObject();
+				final Map<String, String> params = new TreeMap<>();
+				if (run.has("params"))
+					run.getAsJsonObject("params").entrySet().forEach(it -> params.put(it.getKey(), it.getValue().getAsString()));
+				final JsonObject primaryMetric = run.getAsJsonObject("primaryMetric");
+				final Score score = new Score(
+						primaryMetric.get("score").getAsDouble(),
+						primaryMetric.get("scoreUnit").getAsString(),
+						"thrpt".equals(run.get("mode").getAsString()));
+				scores.put(run.get("benchmark").getAsString() + params, score);
+			}
+		}
+		return scores;
+	}
+
+	private static void createParentDirectories(final Path path) throws IOException {
+
+		final Path parent = path.toAbsolutePath().getParent();
+		if (parent != null)
+			Files.createDirectories(parent);
+	}
+
+	static class Score {
+
+		final double value;
+
+		final String unit;
+
+		final boolean higherIsBetter;
+
+		Score(final double value, final String unit, final boolean higherIsBetter) {
+
+			this.value = value;
+			this.unit = unit;
+			this.higherIsBetter = higherIsBetter;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.janelia.saalfeldlab.fx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.fx.actions.ActionSet;
+import org.janelia.saalfeldlab.fx.actions.DragActionSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.event.Event;
+import javafx.scene.Group;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * A full drag stream through an installed {@link DragActionSet}; press, drag detected, {@link #dragEvents} drags
+ * and the release. The score is the time for one whole stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DragActionSetBenchmark {
+
+	@Param({"10", "100"})
+	public int dragEvents;
+
+	@Param({"false", "true"})
+	public boolean relative;
+
+	private Group node;
+
+	private MouseEvent pressed;
+
+	private MouseEvent detected;
+
+	private MouseEvent[] dragged;
+
+	private MouseEvent released;
+
+	private double accumulated;
+
+	@Setup
+	public void setup() {
+
+		final DragActionSet dragActionSet = new DragActionSet("benchmark drag");
+		dragActionSet.setRelative(relative);
+		dragActionSet.onDrag(event -> accumulated += event.getX() - dragActionSet.getStartX());
+
+		node = new Group();
+		ActionSet.installActionSet(node, dragActionSet);
+
+		pressed = SyntheticEvents.mouseEvent(MouseEvent.MOUSE_PRESSED, 0.0, 0.0, MouseButton.PRIMARY, true, false);
+		detected = SyntheticEvents.mouseEvent(MouseEvent.DRAG_DETECTED, 0.0, 0.0, MouseButton.PRIMARY, true, false);
+		dragged = new MouseEvent[dragEvents];
+		for (int i = 0; i < dragEvents; i++)
+			dragged[i] = SyntheticEvents.mouseEvent(MouseEvent.MOUSE_DRAGGED, i + 1, i + 1, MouseButton.PRIMARY, true, false);
+		released = SyntheticEvents.mouseEvent(MouseEvent.MOUSE_RELEASED, dragEvents, dragEvents, MouseButton.PRIMARY, false, false);
+	}
+
+	@Benchmark
+	public double dragStream() {
+
+		Event.fireEvent(node, pressed);
+		Event.fireEvent(node, detected);
+		for (final MouseEvent drag : dragged)
+			Event.fireEvent(node, drag);
+		Event.fireEvent(node, released);
+		return accumulated;
+	}
+}
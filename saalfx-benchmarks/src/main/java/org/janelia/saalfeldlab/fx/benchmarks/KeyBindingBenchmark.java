@@ -0,0 +1,103 @@
+package org.janelia.saalfeldlab.fx.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.fx.actions.KeyAction;
+import org.janelia.saalfeldlab.fx.actions.NamedKeyCombination;
+import org.janelia.saalfeldlab.fx.event.KeyTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
+
+/**
+ * {@link KeyAction#keyMatchesBinding} verification of a KEY_PRESSED event against a populated {@link KeyTracker}.
+ * The first binding matches the pressed keys, the remaining bindings are distinct and never match, similar to
+ * a keymap where each binding gets to check every key event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBindingBenchmark {
+
+	@Param({"1", "100"})
+	public int numBindings;
+
+	@Param({"false", "true"})
+	public boolean keysExclusive;
+
+	private final List<KeyAction> actions = new ArrayList<>();
+
+	private NamedKeyCombination matchingBinding;
+
+	private KeyTracker keyTracker;
+
+	private KeyEvent pressed;
+
+	private int triggered;
+
+	@Setup
+	public void setup() {
+
+		keyTracker = new KeyTracker();
+		keyTracker.addKey(KeyCode.CONTROL);
+		keyTracker.addKey(KeyCode.SHIFT);
+		keyTracker.addKey(KeyCode.A);
+		pressed = SyntheticEvents.keyEvent(KeyEvent.KEY_PRESSED, KeyCode.A, true, true);
+
+		final KeyCombination.Modifier[][] modifiers = {
+				{KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN},
+				{KeyCombination.CONTROL_DOWN},
+				{KeyCombination.SHIFT_DOWN},
+				{KeyCombination.ALT_DOWN},
+				{}
+		};
+		final KeyCode[] codes = KeyCode.values();
+
+		actions.clear();
+		for (int i = 0; i < numBindings; i++) {
+			final KeyCode code = codes[(KeyCode.A.ordinal() + i / modifiers.length) % codes.length];
+			final NamedKeyCombination binding = new NamedKeyCombination("binding " + i, new KeyCodeCombination(code, modifiers[i % modifiers.length]));
+			if (i == 0)
+				matchingBinding = binding;
+
+			final KeyAction action = new KeyAction(KeyEvent.KEY_PRESSED);
+			action.setKeyTracker(() -> keyTracker);
+			action.setConsume(false);
+			action.keyMatchesBinding(binding, keysExclusive);
+			action.onAction(event -> triggered++);
+			actions.add(action);
+		}
+	}
+
+	@Benchmark
+	public boolean bindingMatches() {
+
+		return matchingBinding.matches(pressed, keyTracker, keysExclusive);
+	}
+
+	@Benchmark
+	public int dispatchToAllBindings() {
+
+		for (int i = 0; i < actions.size(); i++)
+			actions.get(i).invoke(pressed);
+		return triggered;
+	}
+}
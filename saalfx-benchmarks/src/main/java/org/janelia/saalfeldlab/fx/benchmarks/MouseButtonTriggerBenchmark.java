@@ -0,0 +1,63 @@
+package org.janelia.saalfeldlab.fx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.fx.actions.MouseAction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * {@link MouseAction#verifyButtonTrigger} with exclusive buttons, for an event that passes and one that is rejected
+ * because another button is down.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MouseButtonTriggerBenchmark {
+
+	private MouseAction action;
+
+	private MouseEvent primaryOnly;
+
+	private MouseEvent primaryAndSecondary;
+
+	private int triggered;
+
+	@Setup
+	public void setup() {
+
+		action = new MouseAction(MouseEvent.MOUSE_PRESSED);
+		action.setConsume(false);
+		action.verifyButtonTrigger(MouseButton.PRIMARY, false, true);
+		action.onAction(event -> triggered++);
+
+		primaryOnly = SyntheticEvents.mouseEvent(MouseEvent.MOUSE_PRESSED, 1.0, 1.0, MouseButton.PRIMARY, true, false);
+		primaryAndSecondary = SyntheticEvents.mouseEvent(MouseEvent.MOUSE_PRESSED, 1.0, 1.0, MouseButton.PRIMARY, true, true);
+	}
+
+	@Benchmark
+	public boolean exclusiveTriggerValid() {
+
+		return action.invoke(primaryOnly);
+	}
+
+	@Benchmark
+	public boolean exclusiveTriggerRejected() {
+
+		return action.invoke(primaryAndSecondary);
+	}
+}
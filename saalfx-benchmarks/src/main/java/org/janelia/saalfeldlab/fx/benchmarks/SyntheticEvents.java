@@ -0,0 +1,49 @@
+package org.janelia.saalfeldlab.fx.benchmarks;
+
+import javafx.event.EventType;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * Factory for synthetic input events. None of these require the JavaFX toolkit, so the benchmarks run headless.
+ */
+public class SyntheticEvents {
+
+	private SyntheticEvents() {
+
+	}
+
+	public static MouseEvent mouseEvent(
+			final EventType<MouseEvent> eventType,
+			final double x,
+			final double y,
+			final MouseButton button,
+			final boolean primaryDown,
+			final boolean secondaryDown) {
+
+		return new MouseEvent(
+				eventType,
+				x, y, x, y,
+				button, 1,
+				false, false, false, false,
+				primaryDown, false, secondaryDown,
+				false, false, false,
+				null);
+	}
+
+	public static MouseEvent mouseEvent(final EventType<MouseEvent> eventType, final double x, final double y) {
+
+		return mouseEvent(eventType, x, y, MouseButton.NONE, false, false);
+	}
+
+	public static KeyEvent keyEvent(
+			final EventType<KeyEvent> eventType,
+			final KeyCode code,
+			final boolean shiftDown,
+			final boolean controlDown) {
+
+		return new KeyEvent(eventType, "", "", code, shiftDown, controlDown, false, false);
+	}
+}
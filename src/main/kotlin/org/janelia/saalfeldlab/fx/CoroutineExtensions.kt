@@ -3,7 +3,9 @@ package org.janelia.saalfeldlab.fx
 
 import io.github.oshai.kotlinlogging.KotlinLogging
 import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BufferOverflow
 import kotlinx.coroutines.channels.Channel
+import java.util.concurrent.atomic.LongAdder
 
 
 private val LOG = KotlinLogging.logger {}
@@ -11,25 +13,99 @@ private val LOG = KotlinLogging.logger {}
 /**
  * Channel wrapper than supports running jobs sequentially within a scope, with cancellation.
  *
+ * What happens when the queue is full is determined by [policy]. Submitting never suspends and never launches a
+ * coroutine per job just to hand it to the loop; only while the queue is full with [BackpressurePolicy.SUSPEND], a
+ * single coroutine hands over the backlog. [submit] returns a [Job] for each submission; [offer] is cheaper, for high
+ * submission rates where the individual job isn't needed.
  *
  * @param coroutineScope to execute the job's on
+ * @param capacity of the queue of jobs waiting to be executed; see [Channel]. Ignored for [BackpressurePolicy.LATEST_WINS].
  * @param delay optional delay after a job finishes before attempting to execute the next job
+ * @param policy what to do when a job is submitted while the queue is full
  */
 open class ChannelLoop(
 	coroutineScope: CoroutineScope = CoroutineScope(SupervisorJob() + Dispatchers.Default),
 	capacity: Int = Channel.RENDEZVOUS,
 	val name: String = "Channel Loop",
 	val delay: suspend () -> Unit = {},
+	val policy: BackpressurePolicy = BackpressurePolicy.SUSPEND,
 ) : CoroutineScope by coroutineScope {
-	protected open val channel = Channel<Job>(capacity = capacity)
+
+	/**
+	 * Keeps passing [delay] as trailing lambda working, now that it's no longer the last parameter.
+	 */
+	constructor(
+		coroutineScope: CoroutineScope = CoroutineScope(SupervisorJob() + Dispatchers.Default),
+		capacity: Int = Channel.RENDEZVOUS,
+		name: String = "Channel Loop",
+		delay: suspend () -> Unit,
+	) : this(coroutineScope, capacity, name, delay, BackpressurePolicy.SUSPEND)
+
+	enum class BackpressurePolicy {
+		/**
+		 * Wait until the queue has room. [submit] and [offer] hand the job over in the background then, in submission order;
+		 * [send] suspends.
+		 */
+		SUSPEND,
+
+		/**
+		 * Drop the job that was queued longest, to make room for the new one
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Drop the new job
+		 */
+		DROP_NEWEST,
+
+		/**
+		 * Only keep the latest job in the queue, regardless of the capacity; e.g. for UI updates where only the latest state matters
+		 */
+		LATEST_WINS
+	}
+
+	private val submitted = LongAdder()
+	private val dropped = LongAdder()
+	private val executed = LongAdder()
+
+	/* jobs waiting for room in the queue with BackpressurePolicy.SUSPEND; guarded by itself. The head is being sent. */
+	private val pendingSends = ArrayDeque<Any>()
+
+	/**
+	 * The queue of the loop. Its elements are either the [Job] of a [submit], or the block of an [offer] or [send].
+	 */
+	protected open val channel: Channel<Any> = when (policy) {
+		BackpressurePolicy.SUSPEND, BackpressurePolicy.DROP_NEWEST -> Channel(capacity, onUndeliveredElement = ::undelivered)
+		BackpressurePolicy.DROP_OLDEST -> Channel(capacity, BufferOverflow.DROP_OLDEST, ::undelivered)
+		BackpressurePolicy.LATEST_WINS -> Channel(Channel.CONFLATED, onUndeliveredElement = ::undelivered)
+	}
+
 	protected var currentJob : Job? = null
 
+	/**
+	 * The number of submitted jobs, including the dropped ones
+	 */
+	val submittedCount: Long
+		get() = submitted.sum()
+
+	/**
+	 * The number of jobs that were dropped by [policy] (or because the loop was cancelled) before they were executed
+	 */
+	val droppedCount: Long
+		get() = dropped.sum()
+
+	/**
+	 * The number of jobs the loop started executing. Jobs of [submit] that were cancelled before their turn are not counted.
+	 */
+	val executedCount: Long
+		get() = executed.sum()
+
 	/**
 	 * Submit a block to execute in the conflated loop.
 	 *
 	 * @param cancelCurrentJob cancel the current job if one exists
 	 * @param block to execute
-	 * @return the job to be submitted
+	 * @return the job to be submitted. Cancelled if it is dropped.
 	 */
 	open fun submit(cancelCurrentJob : Boolean = false, block: suspend CoroutineScope.() -> Unit): Job {
 		ensureActive()
@@ -39,17 +115,100 @@ open class ChannelLoop(
 		}
 		if (cancelCurrentJob)
 			currentJob?.cancel()
-		launch { channel.send(job) }
+		enqueue(job)
 		currentJob = job
 		return job
 	}
 
+	/**
+	 * Submit a block to execute in the loop, without creating a [Job] for it. The block can't be cancelled individually.
+	 *
+	 * @param block to execute
+	 * @return false if [block] was dropped right away
+	 */
+	fun offer(block: suspend CoroutineScope.() -> Unit): Boolean {
+		ensureActive()
+		return enqueue(block)
+	}
+
+	/**
+	 * Submit a block to execute in the loop. Suspends while the queue is full with [BackpressurePolicy.SUSPEND];
+	 * otherwise the same as [offer].
+	 *
+	 * @param block to execute
+	 */
+	suspend fun send(block: suspend CoroutineScope.() -> Unit) {
+		ensureActive()
+		if (policy != BackpressurePolicy.SUSPEND) {
+			enqueue(block)
+			return
+		}
+		submitted.increment()
+		channel.send(block)
+	}
+
+	private fun enqueue(element: Any): Boolean {
+		submitted.increment()
+		if (policy != BackpressurePolicy.SUSPEND) {
+			if (channel.trySend(element).isSuccess) return true
+			undelivered(element)
+			return false
+		}
+		synchronized(pendingSends) {
+			/* queue behind jobs that are still waiting for room, to keep the submission order */
+			if (pendingSends.isEmpty()) {
+				val result = channel.trySend(element)
+				if (result.isSuccess) return true
+				if (result.isClosed) {
+					undelivered(element)
+					return false
+				}
+			}
+			pendingSends.addLast(element)
+			/* a single sender per backlog, so the jobs are handed over in order */
+			if (pendingSends.size == 1) launch { sendPending() }
+		}
+		return true
+	}
+
+	private suspend fun sendPending() {
+		try {
+			while (true) {
+				channel.send(synchronized(pendingSends) { pendingSends.first() })
+				synchronized(pendingSends) {
+					pendingSends.removeFirst()
+					if (pendingSends.isEmpty()) return
+				}
+			}
+		} catch (e: CancellationException) {
+			/* the channel drops the one being sent */
+			synchronized(pendingSends) {
+				pendingSends.removeFirst()
+				pendingSends.forEach { undelivered(it) }
+				pendingSends.clear()
+			}
+			throw e
+		}
+	}
+
+	private fun undelivered(element: Any) {
+		dropped.increment()
+		(element as? Job)?.cancel()
+	}
+
 	init {
 		launch {
 			for (msg in channel) {
 				runCatching {
-					msg.start()
-					msg.join()
+					if (msg is Job) {
+						/* false if it was cancelled while queued */
+						if (msg.start()) executed.increment()
+						msg.join()
+					} else {
+						executed.increment()
+						@Suppress("UNCHECKED_CAST")
+						coroutineScope(msg as suspend CoroutineScope.() -> Unit)
+					}
 				}.onFailure { it ->
 					if (it is CancellationException)
 						LOG.trace(it) { "$name job cancelled" }
@@ -4,45 +4,89 @@ import javafx.beans.InvalidationListener
 import javafx.beans.Observable
 import javafx.beans.property.SimpleDoubleProperty
 import javafx.scene.input.MouseEvent
+import kotlinx.coroutines.javafx.awaitPulse
 import org.apache.commons.lang.builder.HashCodeBuilder
 import org.janelia.saalfeldlab.fx.extensions.nonnullVal
-
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
+
+/**
+ * Position that can be observed as a whole, or per coordinate through [xProperty] and [yProperty].
+ *
+ * Changes to the position are atomic; both coordinates are updated before any listener is notified, so no listener sees
+ * a half updated position. Then the listeners of [xProperty] and [yProperty] are notified (of the coordinates that changed),
+ * and finally the [InvalidationListener]s and [PositionListener]s of the position, once per change.
+ *
+ * With [batchPerPulse], changes are collected until the next JavaFX pulse and only the latest position is published.
+ *
+ * Not thread safe; use it on the JavaFX Application Thread.
+ */
 class ObservablePosition(x: Double, y: Double) : Observable {
 
+	/**
+	 * Listener for the coordinates of an [ObservablePosition], without boxing them.
+	 */
+	fun interface PositionListener {
+		fun positionChanged(x: Double, y: Double)
+	}
 
-	val xProperty: SimpleDoubleProperty = SimpleDoubleProperty(x)
+	val xProperty: SimpleDoubleProperty = Coordinate(x)
 	val x: Double by xProperty.nonnullVal()
 
-	val yProperty: SimpleDoubleProperty = SimpleDoubleProperty(y)
+	val yProperty: SimpleDoubleProperty = Coordinate(y)
 	val y: Double by yProperty.nonnullVal()
 
+	/* copy on write, so listeners can be added and removed while notifying */
+	private var listeners = emptyArray<InvalidationListener>()
+	private var positionListeners = emptyArray<PositionListener>()
+
+	/**
+	 * If true, [set], [setX] and [setY] only publish the latest position once per JavaFX pulse. Until then, [x] and [y]
+	 * keep their previous values; [flush] publishes early. Setting this to false publishes any pending position.
+	 */
+	var batchPerPulse: Boolean = false
+		set(batch) {
+			field = batch
+			if (!batch) flush()
+		}
 
-	private var listeners = mutableListOf<InvalidationListener>()
+	private var pendingX = x
+	private var pendingY = y
+	private var hasPending = false
+	private var flushScheduled = false
 
 	fun set(event: MouseEvent) {
 		set(event.x, event.y)
 	}
 
 	fun set(x: Double, y: Double) {
-		if (x != this.x || y != this.y) {
-			this.xProperty.set(x)
-			this.yProperty.set(y)
-			notifyListeners()
+		if (batchPerPulse) {
+			pendingX = x
+			pendingY = y
+			hasPending = true
+			if (!flushScheduled) {
+				flushScheduled = true
+				InvokeOnJavaFXApplicationThread {
+					awaitPulse()
+					flushScheduled = false
+					flush()
+				}
+			}
+		} else {
+			publish(x, y)
 		}
 	}
 
-	fun setX(x: Double) {
-		if (x != this.x) {
-			this.xProperty.set(x)
-			notifyListeners()
-		}
-	}
+	fun setX(x: Double) = set(x, if (hasPending) pendingY else y)
 
-	fun setY(y: Double) {
-		if (y != this.y) {
-			this.yProperty.set(y)
-			notifyListeners()
-		}
+	fun setY(y: Double) = set(if (hasPending) pendingX else x, y)
+
+	/**
+	 * Publish the pending position, if [batchPerPulse] collected one.
+	 */
+	fun flush() {
+		if (!hasPending) return
+		hasPending = false
+		publish(pendingX, pendingY)
 	}
 
 	override fun equals(other: Any?): Boolean {
@@ -55,16 +99,76 @@ class ObservablePosition(x: Double, y: Double) : Observable {
 
 	override fun hashCode() = HashCodeBuilder().append(x).append(y).toHashCode()
 
-	private fun notifyListeners() {
-		listeners.forEach { it.invalidated(this) }
+	private fun publish(x: Double, y: Double) {
+		val xCoordinate = xProperty as Coordinate
+		val yCoordinate = yProperty as Coordinate
+		val xChanged = x != this.x
+		val yChanged = y != this.y
+		if (!xChanged && !yChanged) return
+		if (xChanged) xCoordinate.setSilently(x)
+		if (yChanged) yCoordinate.setSilently(y)
+		if (xChanged) xCoordinate.notifyListeners()
+		if (yChanged) yCoordinate.notifyListeners()
+		notifyListeners(x, y)
 	}
 
+	private fun notifyListeners(x: Double, y: Double) {
+		for (listener in listeners) listener.invalidated(this)
+		for (listener in positionListeners) listener.positionChanged(x, y)
+	}
 
 	override fun addListener(listener: InvalidationListener) {
-		listeners.add(listener)
+		listeners += listener
 	}
 
 	override fun removeListener(listener: InvalidationListener) {
-		listeners.remove(listener)
+		listeners = listeners.without(listener)
+	}
+
+	fun addListener(listener: PositionListener) {
+		positionListeners += listener
+	}
+
+	fun removeListener(listener: PositionListener) {
+		positionListeners = positionListeners.without(listener)
+	}
+
+	/**
+	 * Defers notifying its listeners while being set together with the other coordinate.
+	 */
+	private class Coordinate(value: Double) : SimpleDoubleProperty(value) {
+
+		private var silent = false
+		private var suppressed = false
+
+		fun setSilently(value: Double) {
+			silent = true
+			try {
+				set(value)
+			} finally {
+				silent = false
+			}
+		}
+
+		fun notifyListeners() {
+			if (!suppressed) return
+			suppressed = false
+			super.fireValueChangedEvent()
+		}
+
+		override fun fireValueChangedEvent() {
+			if (silent) suppressed = true
+			else super.fireValueChangedEvent()
+		}
+	}
+
+	private companion object {
+
+		/* removes the first occurrence only, like MutableList.remove */
+		private inline fun <reified T> Array<T>.without(element: T): Array<T> {
+			val index = indexOf(element)
+			if (index < 0) return this
+			return Array(size - 1) { if (it < index) this[it] else this[it + 1] }
+		}
 	}
 }
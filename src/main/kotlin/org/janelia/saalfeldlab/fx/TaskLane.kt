@@ -0,0 +1,173 @@
+package org.janelia.saalfeldlab.fx
+
+import kotlinx.coroutines.CancellableContinuation
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+
+/**
+ * Priority lane for [Tasks]. Tasks submitted to a lane (see [Tasks.invoke]) wait in the queue of the lane until they can
+ * start; at most [maxConcurrency] tasks of a lane run at the same time, and at most [maxTotalConcurrency] tasks of all
+ * lanes together.
+ *
+ * Whenever a task finishes, the next task is taken from the lane with the highest [priority] that has queued tasks and
+ * is below its [maxConcurrency], so queued interactive tasks start before queued background tasks, regardless of the
+ * order they were submitted in. Running tasks are never interrupted. Within a lane, the next task is picked according
+ * to [policy].
+ *
+ * Waiting tasks suspend, they don't occupy a thread of their dispatcher. Cancelling a waiting task removes it from the queue.
+ *
+ * @param name of the lane, for diagnostics
+ * @param priority higher priorities are scheduled first
+ * @param maxConcurrency how many tasks of this lane may run at the same time
+ * @param policy which queued task to start next
+ * @param dispatcher name of the dispatcher the tasks of this lane run on, see [Tasks.registerDispatcher]
+ */
+class TaskLane @JvmOverloads constructor(
+	val name: String,
+	val priority: Int,
+	val maxConcurrency: Int,
+	val policy: QueuePolicy = QueuePolicy.FIFO,
+	val dispatcher: String = Tasks.DEFAULT_DISPATCHER,
+) {
+
+	enum class QueuePolicy {
+		/** Start the task that was queued first */
+		FIFO,
+
+		/** Start the task that was queued last; e.g. for prefetching, where the latest request is the most relevant */
+		LIFO
+	}
+
+	init {
+		require(maxConcurrency > 0) { "maxConcurrency must be positive but was $maxConcurrency" }
+	}
+
+	/* guarded by LOCK */
+	private val waiting = ArrayDeque<Waiter>()
+
+	/**
+	 * The number of tasks waiting to start in this lane
+	 */
+	@Volatile
+	var queueDepth = 0
+		private set
+
+	/**
+	 * The number of tasks of this lane currently running
+	 */
+	@Volatile
+	var running = 0
+		private set
+
+	/**
+	 * Run [block] once this lane schedules it.
+	 */
+	internal suspend fun <T> withPermit(block: suspend () -> T): T {
+		acquire()
+		try {
+			return block()
+		} finally {
+			release()
+		}
+	}
+
+	private suspend fun acquire() {
+		val waiter = Waiter()
+		try {
+			suspendCancellableCoroutine { continuation ->
+				synchronized(LOCK) {
+					waiter.continuation = continuation
+					waiting.addLast(waiter)
+					queueDepth = waiting.size
+					if (waiting.size == 1) queue(this)
+					schedule()
+				}
+			}
+		} catch (e: CancellationException) {
+			synchronized(LOCK) {
+				if (waiter.granted) release()
+				else if (waiting.remove(waiter)) {
+					queueDepth = waiting.size
+					if (waiting.isEmpty()) queued.remove(this)
+				}
+			}
+			throw e
+		}
+	}
+
+	private fun release() = synchronized(LOCK) {
+		running--
+		totalRunning--
+		schedule()
+	}
+
+	override fun toString() = "TaskLane($name, priority=$priority, maxConcurrency=$maxConcurrency, policy=$policy)"
+
+	private class Waiter {
+		lateinit var continuation: CancellableContinuation<Unit>
+		var granted = false
+	}
+
+	companion object {
+
+		private val CPUS = Runtime.getRuntime().availableProcessors()
+
+		/**
+		 * For tasks the user is waiting on
+		 */
+		@JvmField
+		val INTERACTIVE = TaskLane("interactive", priority = 100, maxConcurrency = CPUS)
+
+		@JvmField
+		val NORMAL = TaskLane("normal", priority = 50, maxConcurrency = CPUS)
+
+		/**
+		 * For speculative work like filling caches. Limited to half the CPUs, and the latest task is started first.
+		 */
+		@JvmField
+		val BACKGROUND = TaskLane("background", priority = 0, maxConcurrency = maxOf(1, CPUS / 2), policy = QueuePolicy.LIFO)
+
+		private val LOCK = Any()
+
+		/* lanes with waiting tasks, by descending priority; guarded by LOCK */
+		private val queued = ArrayList<TaskLane>()
+
+		private var totalRunning = 0
+
+		/**
+		 * How many tasks of all lanes together may run at the same time. Defaults to the number of CPUs.
+		 */
+		@JvmStatic
+		var maxTotalConcurrency: Int = CPUS
+			set(maxTotalConcurrency) {
+				require(maxTotalConcurrency > 0) { "maxTotalConcurrency must be positive but was $maxTotalConcurrency" }
+				synchronized(LOCK) {
+					field = maxTotalConcurrency
+					schedule()
+				}
+			}
+
+		private fun queue(lane: TaskLane) {
+			/* after lanes of the same priority, so those are scheduled in the order they were queued */
+			val index = queued.indexOfFirst { it.priority < lane.priority }
+			if (index < 0) queued += lane else queued.add(index, lane)
+		}
+
+		private fun schedule() {
+			while (totalRunning < maxTotalConcurrency) {
+				val lane = queued.firstOrNull { it.running < it.maxConcurrency } ?: return
+				val waiter = when (lane.policy) {
+					QueuePolicy.FIFO -> lane.waiting.removeFirst()
+					QueuePolicy.LIFO -> lane.waiting.removeLast()
+				}
+				lane.queueDepth = lane.waiting.size
+				if (lane.waiting.isEmpty()) queued.remove(lane)
+				lane.running++
+				totalRunning++
+				waiter.granted = true
+				waiter.continuation.resume(Unit)
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package org.janelia.saalfeldlab.fx
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+import java.util.function.Consumer
+
+/**
+ * Channel for progress or partial results of a task, from the task to the UI.
+ *
+ * The task [emit]s as often as it likes, from any thread. Updates are conflated; the [onUpdate] consumers receive only the
+ * latest update, on the JavaFX Application Thread, at most once per pulse. The last update is always delivered.
+ * All [TaskUpdates] share a single [InvokeOnJavaFXApplicationThread.conflatedPulseLoop], so no matter how many tasks
+ * report, there is at most one hand-off to the JavaFX Application Thread per pulse.
+ *
+ * ```kotlin
+ * val progress = TaskUpdates<Double>().onUpdate { progressBar.progress = it }
+ * Tasks(progress) {
+ *     files.forEachIndexed { i, file ->
+ *         scan(file)
+ *         emit((i + 1.0) / files.size)
+ *     }
+ * }
+ * ```
+ *
+ * @param P the type of the updates
+ */
+class TaskUpdates<P> {
+
+	private val consumers = CopyOnWriteArrayList<(P) -> Unit>()
+
+	private val pendingUpdate = AtomicReference<Any?>(NO_UPDATE)
+
+	private val queued = AtomicBoolean(false)
+
+	/**
+	 * Publish [update]. Replaces the previous update if that was not delivered yet. Does not block or suspend.
+	 */
+	fun emit(update: P) {
+		pendingUpdate.set(update)
+		if (queued.compareAndSet(false, true)) {
+			pending += this
+			scheduleDelivery()
+		}
+	}
+
+	/**
+	 * Receive the updates on the JavaFX Application Thread, at most once per pulse.
+	 */
+	@JvmSynthetic
+	fun onUpdate(onUpdate: (P) -> Unit) = apply { consumers += onUpdate }
+
+	fun onUpdate(onUpdate: Consumer<P>) = apply { onUpdate { onUpdate.accept(it) } }
+
+	private fun deliver() {
+		queued.set(false)
+		val update = pendingUpdate.getAndSet(NO_UPDATE)
+		if (update === NO_UPDATE) return
+		@Suppress("UNCHECKED_CAST")
+		for (consumer in consumers) consumer(update as P)
+	}
+
+	private companion object {
+
+		private val LOG = KotlinLogging.logger { }
+
+		private val NO_UPDATE = Any()
+
+		private val deliveryLoop by lazy { InvokeOnJavaFXApplicationThread.conflatedPulseLoop() }
+
+		/* updates that were emitted since the last delivery */
+		private val pending = ConcurrentLinkedQueue<TaskUpdates<*>>()
+
+		private val deliveryScheduled = AtomicBoolean(false)
+
+		private fun scheduleDelivery() {
+			/* at most one delivery in the loop at a time; the loop waits a pulse after each */
+			if (deliveryScheduled.compareAndSet(false, true))
+				deliveryLoop.offer { deliverPending() }
+		}
+
+		private fun deliverPending() {
+			deliveryScheduled.set(false)
+			while (true) {
+				val updates = pending.poll() ?: break
+				try {
+					updates.deliver()
+				} catch (e: Exception) {
+					LOG.error(e) { "Unable to deliver task update" }
+				}
+			}
+		}
+	}
+}
@@ -1,15 +1,23 @@
 package org.janelia.saalfeldlab.fx
 
 import io.github.oshai.kotlinlogging.KotlinLogging
+import javafx.application.Platform
 import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.async
+import kotlinx.coroutines.asCoroutineDispatcher
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
 import java.util.function.BiConsumer
 import java.util.function.Consumer
+import java.util.function.Function
 import java.util.function.Supplier
 
 private val TASK_SCOPE = CoroutineScope(Dispatchers.Default + SupervisorJob())
@@ -17,11 +25,43 @@ private val TASK_SCOPE = CoroutineScope(Dispatchers.Default + SupervisorJob())
 class Tasks private constructor() {
 
 	companion object {
+
+		/**
+		 * Name of the dispatcher of [invoke] and [submit]; [Dispatchers.Default], sized to the number of CPUs.
+		 */
+		const val DEFAULT_DISPATCHER = "default"
+
+		/**
+		 * Name of the dispatcher of [io] and [submitBlocking]; see [IO].
+		 */
+		const val IO_DISPATCHER = "io"
+
+		/**
+		 * Runs each task on a new virtual thread, so tasks that block on I/O don't tie up the threads of [Dispatchers.Default].
+		 */
+		@JvmField
+		val IO: CoroutineDispatcher = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("saalfx-io-", 0).factory()).asCoroutineDispatcher()
+
+		private val scopes = ConcurrentHashMap<String, CoroutineScope>().apply {
+			put(DEFAULT_DISPATCHER, TASK_SCOPE)
+			put(IO_DISPATCHER, CoroutineScope(IO + SupervisorJob()))
+		}
+
 		@JvmSynthetic
 		operator fun <T> invoke(call: suspend () -> T): UtilityTask<T> {
 			return UtilityTask { call() }
 		}
 
+		/**
+		 * Run [call] on the dispatcher registered as [dispatcher].
+		 *
+		 * @throws IllegalArgumentException if no dispatcher is registered as [dispatcher]
+		 */
+		@JvmSynthetic
+		operator fun <T> invoke(dispatcher: String, call: suspend () -> T): UtilityTask<T> {
+			return UtilityTask(scope(dispatcher)) { call() }
+		}
+
 		@JvmStatic
 		fun <T> submit(call: Supplier<T>): UtilityTask<T> {
 			return invoke { call.get() }
@@ -31,6 +71,117 @@ class Tasks private constructor() {
 		fun submit(call: Runnable): UtilityTask<Unit> {
 			return invoke { call.run() }
 		}
+
+		/**
+		 * @see invoke
+		 */
+		@JvmStatic
+		fun <T> submit(dispatcher: String, call: Supplier<T>): UtilityTask<T> {
+			return invoke(dispatcher) { call.get() }
+		}
+
+		/**
+		 * @see invoke
+		 */
+		@JvmStatic
+		fun submit(dispatcher: String, call: Runnable): UtilityTask<Unit> {
+			return invoke(dispatcher) { call.run() }
+		}
+
+		/**
+		 * Run [call] in [lane], on the dispatcher of the lane. [call] starts once [lane] schedules it.
+		 *
+		 * @throws IllegalArgumentException if the dispatcher of [lane] is not registered
+		 */
+		@JvmSynthetic
+		operator fun <T> invoke(lane: TaskLane, call: suspend () -> T): UtilityTask<T> {
+			return UtilityTask(scope(lane.dispatcher), lane) { lane.withPermit(call) }
+		}
+
+		/**
+		 * @see invoke
+		 */
+		@JvmStatic
+		fun <T> submit(lane: TaskLane, call: Supplier<T>): UtilityTask<T> {
+			return invoke(lane) { call.get() }
+		}
+
+		/**
+		 * @see invoke
+		 */
+		@JvmStatic
+		fun submit(lane: TaskLane, call: Runnable): UtilityTask<Unit> {
+			return invoke(lane) { call.run() }
+		}
+
+		/**
+		 * Run [call], which can report progress or partial results to [updates] with [TaskUpdates.emit].
+		 */
+		@JvmSynthetic
+		operator fun <P, T> invoke(updates: TaskUpdates<P>, call: suspend TaskUpdates<P>.() -> T): UtilityTask<T> {
+			return UtilityTask { updates.call() }
+		}
+
+		/**
+		 * @see invoke
+		 */
+		@JvmStatic
+		fun <P, T> submit(updates: TaskUpdates<P>, call: Function<TaskUpdates<P>, T>): UtilityTask<T> {
+			return invoke(updates) { call.apply(this) }
+		}
+
+		/**
+		 * Run [call] on [IO], for tasks that block, e.g. on file or network I/O.
+		 */
+		@JvmSynthetic
+		fun <T> io(call: suspend () -> T): UtilityTask<T> = invoke(IO_DISPATCHER, call)
+
+		/**
+		 * @see io
+		 */
+		@JvmStatic
+		fun <T> submitBlocking(call: Supplier<T>): UtilityTask<T> {
+			return io { call.get() }
+		}
+
+		/**
+		 * @see io
+		 */
+		@JvmStatic
+		fun submitBlocking(call: Runnable): UtilityTask<Unit> {
+			return io { call.run() }
+		}
+
+		/**
+		 * Register [dispatcher] as [name], to run tasks on with [invoke] and [submit].
+		 *
+		 * @throws IllegalArgumentException if a dispatcher is registered as [name] already
+		 */
+		@JvmStatic
+		fun registerDispatcher(name: String, dispatcher: CoroutineDispatcher) {
+			require(scopes.putIfAbsent(name, CoroutineScope(dispatcher + SupervisorJob())) == null) { "Dispatcher $name is registered already" }
+		}
+
+		/**
+		 * Remove the dispatcher registered as [name]. Tasks already submitted to it keep running.
+		 * [DEFAULT_DISPATCHER] and [IO_DISPATCHER] can't be removed.
+		 *
+		 * @return true if a dispatcher was registered as [name]
+		 */
+		@JvmStatic
+		fun unregisterDispatcher(name: String): Boolean {
+			require(name != DEFAULT_DISPATCHER && name != IO_DISPATCHER) { "Dispatcher $name can't be removed" }
+			return scopes.remove(name) != null
+		}
+
+		/**
+		 * @return the names of all registered dispatchers
+		 */
+		@JvmStatic
+		val dispatchers: Set<String>
+			get() = scopes.keys.toSet()
+
+		private fun scope(dispatcher: String) = requireNotNull(scopes[dispatcher]) { "No dispatcher registered as $dispatcher" }
 	}
 }
 
@@ -38,11 +189,39 @@ class Tasks private constructor() {
 @Suppress("OPT_IN_USAGE")
 class UtilityTask<V> internal constructor(
 	private val scope: CoroutineScope = TASK_SCOPE,
+	/**
+	 * The [TaskLane] this task was scheduled in, if any
+	 */
+	val lane: TaskLane? = null,
 	private val block: suspend CoroutineScope.() -> V
 ) : Deferred<V> by scope.async(block = block) {
 
+	/**
+	 * What [get] and [wait] do when called on the JavaFX Application Thread, for a task that is not completed yet.
+	 */
+	enum class FxThreadAwait {
+		/**
+		 * Run a nested event loop (see [Platform.enterNestedEventLoop]) until the task completes, so the UI stays responsive
+		 * and the task can use the JavaFX Application Thread (e.g. with [InvokeOnJavaFXApplicationThread]).
+		 */
+		NESTED_EVENT_LOOP,
+
+		/**
+		 * Throw an [IllegalStateException] instead of waiting.
+		 */
+		FAIL
+	}
+
 	companion object {
 		private val LOG = KotlinLogging.logger { }
+
+		/**
+		 * What [get] and [wait] do when called on the JavaFX Application Thread. Blocking it would freeze the UI, and
+		 * deadlock if the task needs the JavaFX Application Thread to complete.
+		 */
+		@JvmStatic
+		@Volatile
+		var fxThreadAwait = FxThreadAwait.NESTED_EVENT_LOOP
 	}
 
 	@JvmSynthetic
@@ -94,9 +273,56 @@ class UtilityTask<V> internal constructor(
 		onEnd { result, cause -> onEnd.accept(result, cause) }
 	}
 
-	fun get() = runBlocking { await() }
+	/**
+	 * Wait for the task to complete.
+	 * On the JavaFX Application Thread, this doesn't block the thread but behaves according to [fxThreadAwait].
+	 *
+	 * @return the result of the task
+	 * @throws CancellationException if the task was cancelled
+	 * @throws IllegalStateException on the JavaFX Application Thread, if [fxThreadAwait] is [FxThreadAwait.FAIL] or
+	 * a nested event loop can't be started
+	 */
+	fun get(): V {
+		if (!Platform.isFxApplicationThread()) return runBlocking { await() }
+		awaitOnFxThread()
+		return getCompleted()
+	}
 
+	/**
+	 * Wait for the task to complete, without retrieving its result.
+	 * On the JavaFX Application Thread, this doesn't block the thread but behaves according to [fxThreadAwait].
+	 *
+	 * @throws IllegalStateException on the JavaFX Application Thread, if [fxThreadAwait] is [FxThreadAwait.FAIL] or
+	 * a nested event loop can't be started
+	 */
 	fun wait() = apply {
-		runBlocking { join() }
+		if (Platform.isFxApplicationThread()) awaitOnFxThread()
+		else runBlocking { join() }
+	}
+
+	/**
+	 * Suspend until the task completes, then pass its result to [onFxThread] on the JavaFX Application Thread.
+	 * The suspending counterpart of [get], for coroutines that need to update the UI with the result.
+	 *
+	 * @return the result of [onFxThread]
+	 */
+	suspend fun <R> awaitFx(onFxThread: (V) -> R): R {
+		val result = await()
+		return withContext(Dispatchers.Main.immediate) { onFxThread(result) }
+	}
+
+	private fun awaitOnFxThread() {
+		if (isCompleted) return
+		when (fxThreadAwait) {
+			FxThreadAwait.FAIL -> throw IllegalStateException("Waiting for a task on the JavaFX Application Thread would block the UI; use a callback or awaitFx instead")
+			FxThreadAwait.NESTED_EVENT_LOOP -> {
+				check(Platform.canStartNestedEventLoop()) { "Can't wait for a task during animation or layout processing" }
+				val key = Any()
+				/* always posted, so the nested loop is exited only after it was entered */
+				invokeOnCompletion { Platform.runLater { Platform.exitNestedEventLoop(key, null) } }
+				LOG.trace { "Entering nested event loop until $this completes" }
+				Platform.enterNestedEventLoop(key)
+			}
+		}
 	}
 }
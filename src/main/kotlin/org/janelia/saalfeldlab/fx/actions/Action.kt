@@ -16,8 +16,14 @@ import org.janelia.saalfeldlab.fx.actions.Action.Companion.action
 import org.janelia.saalfeldlab.fx.actions.Action.Companion.installAction
 import org.janelia.saalfeldlab.fx.actions.Action.Companion.onAction
 import org.janelia.saalfeldlab.fx.actions.Action.Companion.removeAction
+import org.janelia.saalfeldlab.fx.Tasks
+import org.janelia.saalfeldlab.fx.UtilityTask
+import org.janelia.saalfeldlab.fx.event.KeyMask
 import org.janelia.saalfeldlab.fx.event.KeyTracker
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
+import org.janelia.saalfeldlab.fx.util.PulseCoalescer
 import java.util.function.Consumer
+import java.util.function.Function
 import kotlin.jvm.java
 
 /**
@@ -103,6 +109,20 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 	 *  */
 	var keysExclusive = false
 
+	/**
+	 * If true, the [onAction] callback is not run for every valid event. Instead, all valid events between two JavaFX pulses
+	 * are collapsed into a single callback at the next pulse, with the latest event. Events are still verified, and consumed
+	 * (if [consume]), as they arrive. Useful for high frequency events (e.g. [MouseEvent.MOUSE_MOVED] or [MouseEvent.MOUSE_DRAGGED])
+	 * with expensive callbacks. Programmatic invocation with a `null` event always runs immediately.
+	 *
+	 * See [flushCoalesced] to deliver a pending event early.
+	 */
+	var coalescePerPulse = false
+		set(value) {
+			if (!value) coalescer?.flush()
+			field = value
+		}
+
 	/**
 	 * Key tracker provider used to [verifyKeys]. If not provided, all calls to [verifyKeys] will return `false`, UNLESS [ignoreKeys] was called.
 	 */
@@ -119,6 +139,18 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 
 	private var action: (E?) -> Unit = {}
 
+	/* true if the action times the callback itself; see onActionWithState */
+	private var actionRecordsMetrics = false
+
+	private var coalescer: PulseCoalescer<E>? = null
+	private var deliveringCoalesced = false
+
+	private var metricsEntry: ActionMetrics.Entry? = null
+	private var metricsEntryName: String? = null
+
+	private var keysDownMask: KeyMask = KeyMask.EMPTY
+	private var keysDownMaskSource: List<KeyCode>? = null
+
 	/**
 	 * Optional logic to call on a provided tool node or to provide a custom tool node.
 	 * The returned node will be used, whether it's the provided node or a new node.
@@ -155,12 +187,28 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 	 * @param event to check if is a valid trigger for this [Action]
 	 * @return true if [Action] trigger should proceed.
 	 */
-	fun isValid(event: E?): Boolean {
+	fun isValid(event: E?): Boolean = isValid(event, metrics())
+
+	private fun isValid(event: E?, metrics: ActionMetrics.Entry?): Boolean {
 		val validForEventOrNull = when (event) {
 			null -> true
-			else -> canHandleEvent(event.eventType) && verifyKeys(event)
+			else -> canHandleEvent(event.eventType) && verifyKeys(event).also { if (!it) metrics?.rejected(ActionMetrics.KEYS_REJECTION) }
+		}
+		return validForEventOrNull && checks.verify(event, logger, metrics)
+	}
+
+	/**
+	 * The [ActionMetrics.Entry] of this [Action], or null if [ActionMetrics.enabled] is false.
+	 * Cached, and only looked up again if the [name] changes.
+	 */
+	internal fun metrics(): ActionMetrics.Entry? {
+		if (!ActionMetrics.enabled) return null
+		val entry = metricsEntry
+		if (entry != null && metricsEntryName === name) return entry
+		return ActionMetrics[name ?: "event-${eventType.name}"].also {
+			metricsEntry = it
+			metricsEntryName = name
 		}
-		return validForEventOrNull && checks.verify(event, logger)
 	}
 
 	/**
@@ -175,7 +223,7 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 	 */
 	protected open fun verifyKeys(event: E): Boolean {
 		// only null if set intentionally, which is done if we don't care about keys
-		if (keysDown == null) return true
+		val keysDown = keysDown ?: return true
 
 		/* Three conditions to check;
 		 *  - If we expect no keys, but don't care if some are down
@@ -184,18 +232,29 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 		 *  - If AT LEAST the keys we expect are down  */
 		return keyTracker()?.run {
 			when {
-				keysDown!!.isEmpty() && !keysExclusive -> true
-				keysDown!!.isEmpty() -> noKeysActive().also { if (!it) logger.trace { "expected no keys, but some were down" } }
-				keysExclusive -> areOnlyTheseKeysDown(*keysDown!!.toTypedArray()).also { if (!it) logger.trace { ("expected only these keys: ${keysDown}, but active keys were: (${getActiveKeyCodes(true)}") } }
-				else -> areKeysDown(*keysDown!!.toTypedArray()).also { if (!it) logger.trace { "expected keys: $keysDown, but some were not down" } }
+				keysDown.isEmpty() && !keysExclusive -> true
+				keysDown.isEmpty() -> noKeysActive().also { if (!it) logger.traceIfEnabled { "expected no keys, but some were down" } }
+				keysExclusive -> areOnlyTheseKeysDown(keysDownMask(keysDown)).also { if (!it) logger.traceIfEnabled { ("expected only these keys: ${keysDown}, but active keys were: (${getActiveKeyCodes(true)}") } }
+				else -> areKeysDown(keysDownMask(keysDown)).also { if (!it) logger.traceIfEnabled { "expected keys: $keysDown, but some were not down" } }
 			}
 		} ?: let {
-			logger.trace { "keyTracker is null" }
+			logger.traceIfEnabled { "keyTracker is null" }
 			false
 		}
 
 	}
 
+	/**
+	 * @return the [KeyMask] of [keysDown], recomputed only when [keysDown] is replaced
+	 */
+	private fun keysDownMask(keysDown: List<KeyCode>): KeyMask {
+		if (keysDownMaskSource !== keysDown) {
+			keysDownMask = KeyMask.of(keysDown)
+			keysDownMaskSource = keysDown
+		}
+		return keysDownMask
+	}
+
 	/**
 	 * Sets [keysDown] to null. This is used to indicate that this [Action] doesn't care about the state of keys.
 	 * Causes [verifyKeys] to always return true.
@@ -213,6 +272,7 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 	@JvmSynthetic
 	fun onAction(handle: (E?) -> Unit) {
 		action = handle
+		actionRecordsMetrics = false
 	}
 
 	@JvmSynthetic
@@ -238,30 +298,43 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 		lateinit var curAction: (E?) -> Unit
 
 
+		/* Reused for every invocation, unless it's still pushed (i.e. a re-entrant invocation) */
+		var reusableFrame = CheckFrame<E>()
+
 		fun verifyReInvokeAndReset(it: E?) {
-			var checksForActionState: List<CheckVerify<E>> = emptyList()
 			/* We don't want to eagerly create the state on Action registration, so instead do it on the first
 			* attempt to call `onAction`. It will create the state, store the reference, and register the `verifyState`
-			* methods. */
-			val checksBefore = checks.checks.toList()
-			val state = createState().apply {
-				logger.trace { "Create and register checks for new ActionState: $this" }
-				verifyState(this@Action)
-				checksForActionState = checks.checks.filter { it !in checksBefore }.toList()
+			* methods into a check frame, which is only pushed for the next attempt. */
+			val frame = reusableFrame.takeUnless { frame -> frame.pushed } ?: CheckFrame<E>().also { frame -> reusableFrame = frame }
+			val state = checks.record(frame) {
+				createState().apply {
+					logger.traceIfEnabled { "Create and register checks for new ActionState: $this" }
+					verifyState(this@Action)
+				}
 			}
 
 			/* Then it will reset onAction to call the action, with the state. This mean that the next time the action is
 			 * called, it will only proceed to `onAction` after the `verifyState` checks have been satisfied. */
 			curAction = {
-				logger.trace { "Trigger action for verified ActionState: $this" }
-				withActionState(state, it)
+				logger.traceIfEnabled { "Trigger action for verified ActionState: $this" }
+				val metrics = metrics()
+				val start = if (metrics != null) System.nanoTime() else 0L
+				try {
+					withActionState(state, it)
+				} finally {
+					metrics?.invoked(System.nanoTime() - start)
+				}
 			}
 
-			/* Manually trigger the next attempt to trigger the Action */
-			invoke(it)
-			curAction = { verifyReInvokeAndReset(it) }
-			/* And lastly, cleanup the checks from the previous ActionState instance */
-			checks.checks.removeAll(checksForActionState)
+			/* Manually trigger the next attempt to trigger the Action, with the state's checks */
+			checks.push(frame)
+			try {
+				invoke(it)
+			} finally {
+				curAction = { verifyReInvokeAndReset(it) }
+				/* And lastly, drop the checks of this ActionState instance */
+				checks.pop(frame)
+			}
 		}
 
 		curAction = { verifyReInvokeAndReset(it) }
@@ -269,6 +342,8 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 		onAction {
 			curAction(it)
 		}
+		/* only the re-invocation with the verified state runs withActionState, so only that is an invocation */
+		actionRecordsMetrics = true
 	}
 
 	/**
@@ -278,6 +353,67 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 	 */
 	fun onAction(handle: Consumer<E?>) {
 		action = { handle.accept(it) }
+		actionRecordsMetrics = false
+	}
+
+	/**
+	 * Specify a callback to run in the background when the [Action] is valid.
+	 *
+	 * Verification, and consuming the event, still happen synchronously on the event thread. Only [handle] runs as a [Tasks]
+	 * in the background. If the [Action] is triggered again while the previous [handle] is still running, the previous one
+	 * is cancelled, so only the latest invocation delivers its result. [handle] should check for cancellation
+	 * (e.g. [kotlinx.coroutines.ensureActive]) if it runs for a long time.
+	 *
+	 * [onResult] is called on the JavaFX Application Thread. Exceptions thrown by [handle] or [onResult] are passed to
+	 * the [handleException] callback on the JavaFX Application Thread, or logged if there is none.
+	 *
+	 * @param R the result type of [handle]
+	 * @param onResult callback on the JavaFX Application Thread with the result of the latest [handle]
+	 * @param handle callback to run in the background when the [Action] is valid
+	 */
+	@JvmSynthetic
+	fun <R> onActionAsync(onResult: (R) -> Unit = {}, handle: suspend (E?) -> R) {
+		var latest: UtilityTask<R>? = null
+		onAction { event ->
+			latest?.cancel()
+			val task = Tasks { handle(event) }
+			/* before registering the callbacks; they may run right away if handle completes quickly */
+			latest = task
+			task
+				.onSuccess { result ->
+					InvokeOnJavaFXApplicationThread {
+						/* a newer invocation may have started after this one completed */
+						if (latest === task) onResultOrHandleException(result, onResult)
+					}
+				}
+				.onFailed { cause ->
+					InvokeOnJavaFXApplicationThread {
+						if (latest !== task) return@InvokeOnJavaFXApplicationThread
+						logger.debug { "Exception caught in async action: ${cause.message}" }
+						(cause as? Exception)?.let { exceptionHandler?.invoke(it) } ?: throw cause
+					}
+				}
+		}
+	}
+
+	/**
+	 * Specify a callback to run in the background when the [Action] is valid.
+	 *
+	 * @see onActionAsync
+	 * @param handle callback to run in the background when the [Action] is valid
+	 * @param onResult callback on the JavaFX Application Thread with the result of the latest [handle]
+	 */
+	fun <R> onActionAsync(handle: Function<E?, R>, onResult: Consumer<R>) {
+		onActionAsync({ onResult.accept(it) }) { handle.apply(it) }
+	}
+
+	private fun <R> onResultOrHandleException(result: R, onResult: (R) -> Unit) {
+		try {
+			onResult(result)
+		} catch (e: Exception) {
+			logger.debug { "Exception caught: ${e.message}" }
+			exceptionHandler?.invoke(e) ?: throw e
+		}
 	}
 
 	/**
@@ -335,7 +471,7 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 	fun verifyEventNotNull() {
 		verify("Event is null") {
 			if (it != null) true else {
-				logger.trace { "$name not valid when event is null" }
+				logger.traceIfEnabled { "$name not valid when event is null" }
 				false
 			}
 		}
@@ -343,28 +479,68 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 
 
 	operator fun invoke(event: E? = null): Boolean {
-		val isConsumed = event?.isConsumed == true
-		return if (!isConsumed && isValid(event)) {
-			try {
-				/* isValid(event) will only be true if event is E */
-				action(event)
-			} catch (e: Exception) {
-				logger.debug { "Exception caught: ${e.message}" }
-				exceptionHandler?.invoke(e) ?: throw e
+		/* A coalesced event was consumed when it was submitted; re-invocations during its delivery (e.g. by onActionWithState) must still run */
+		val isConsumed = event?.isConsumed == true && !deliveringCoalesced
+		val metrics = metrics()
+		return if (!isConsumed && isValid(event, metrics)) {
+			/* Invocations from within a coalesced delivery must run immediately */
+			if (coalescePerPulse && event != null && !deliveringCoalesced) {
+				val coalescer = coalescer ?: PulseCoalescer<E> { deliverCoalesced(it) }.also { coalescer = it }
+				coalescer.submit(event)
+			} else {
+				runAction(event, metrics)
 			}
 			if (consume) {
 				event?.consume()
 			}
-			logger.trace { "completed successfully" }
+			logger.traceIfEnabled { "completed successfully" }
 			true
 		} else {
 			if (!isConsumed) {
-				logger.trace { ("Event ($event) was invalid for this action") }
+				logger.traceIfEnabled { ("Event ($event) was invalid for this action") }
 			}
 			false
 		}
 	}
 
+	/**
+	 * If [coalescePerPulse] is true, and an event is waiting for the next pulse, run the [onAction] callback for it now.
+	 */
+	fun flushCoalesced() {
+		coalescer?.flush()
+	}
+
+	/**
+	 * Drop the event waiting for the next pulse, if [coalescePerPulse] is true, without running the [onAction] callback.
+	 * Called when the [Action] is removed from its target.
+	 */
+	internal fun cancelCoalesced() {
+		coalescer?.cancel()
+	}
+
+	private fun runAction(event: E?, actionMetrics: ActionMetrics.Entry?) {
+		val metrics = actionMetrics.takeUnless { actionRecordsMetrics }
+		val start = if (metrics != null) System.nanoTime() else 0L
+		try {
+			/* isValid(event) will only be true if event is E */
+			action(event)
+		} catch (e: Exception) {
+			logger.debug { "Exception caught: ${e.message}" }
+			exceptionHandler?.invoke(e) ?: throw e
+		} finally {
+			metrics?.invoked(System.nanoTime() - start)
+		}
+	}
+
+	private fun deliverCoalesced(event: E) {
+		deliveringCoalesced = true
+		try {
+			runAction(event, metrics())
+		} finally {
+			deliveringCoalesced = false
+		}
+	}
+
 	/**
 	 * Custom EventHandler used only to provide the name of the Action and delegate the [Action.invoke] as an [EventHandler]
 	 *
@@ -451,27 +627,94 @@ open class Action<E : Event>(val eventType: EventType<out E>) {
 		}
 	}
 
+	/**
+	 * The checks of an [Action]; those registered via [verify], followed by a stack of [CheckFrame]s that are only
+	 * pushed for the duration of an invocation (e.g. the checks of an [ActionState] in [onActionWithState]).
+	 *
+	 * Registering a check replaces the list of registered checks rather than modifying it, and frames are never modified
+	 * while pushed, so checks registered while verifying never affect the verification in progress.
+	 */
 	private class Checks<E : Event> {
-		val checks = mutableListOf<CheckVerify<E>>()
 
+		private var registered: List<CheckVerify<E>> = emptyList()
+
+		private val frames = ArrayList<CheckFrame<E>>()
+
+		private var recording: CheckFrame<E>? = null
+
+		/**
+		 * Register [check], or add it to the [CheckFrame] being recorded
+		 */
 		operator fun plusAssign(check: CheckVerify<E>) {
-			checks += check
+			recording?.let { it.checks += check } ?: let { registered = registered + check }
+		}
+
+		/**
+		 * Clear [frame], and record all checks registered during [block] into it instead of registering them.
+		 */
+		inline fun <R> record(frame: CheckFrame<E>, block: () -> R): R {
+			check(!frame.pushed) { "Cannot record into a pushed check frame" }
+			frame.checks.clear()
+			val previous = recording
+			recording = frame
+			try {
+				return block()
+			} finally {
+				recording = previous
+			}
+		}
+
+		fun push(frame: CheckFrame<E>) {
+			frame.pushed = true
+			frames += frame
+		}
+
+		fun pop(frame: CheckFrame<E>) {
+			check(frames.lastOrNull() === frame) { "Check frames must be popped in the order they were pushed" }
+			frames.removeAt(frames.lastIndex)
+			frame.pushed = false
 		}
 
-		fun verify(event: E?, logger: KLogger): Boolean {
-			return checks.isEmpty() || let {
-				for ((expected, check) in checks) {
-					if (!check(event)) {
+		fun verify(event: E?, logger: KLogger, metrics: ActionMetrics.Entry? = null): Boolean {
+			if (!verify(registered, event, logger, metrics)) return false
+			/* indexed, to avoid an iterator per event */
+			for (i in 0 until frames.size) {
+				if (!verify(frames[i].checks, event, logger, metrics)) return false
+			}
+			return true
+		}
+
+		private fun verify(checks: List<CheckVerify<E>>, event: E?, logger: KLogger, metrics: ActionMetrics.Entry?): Boolean {
+			for (i in checks.indices) {
+				val (expected, check) = checks[i]
+				if (!check(event)) {
+					metrics?.rejected(expected ?: ActionMetrics.UNNAMED_CHECK_REJECTION)
+					logger.traceIfEnabled {
 						val startMsg = expected?.let { "$it " } ?: ""
-						val msg = "$startMsg(${check::class.java})"
-						logger.trace { """Verify: "$msg" did not pass""" }
-						return false
+						"""Verify: "$startMsg(${check::class.java})" did not pass"""
 					}
+					return false
 				}
-				true
 			}
+			return true
 		}
 	}
 }
 
+/**
+ * Checks that are only verified while pushed onto the [Action]s checks. Reusable once popped.
+ */
+private class CheckFrame<E : Event> {
+	val checks = ArrayList<CheckVerify<E>>()
+	var pushed = false
+}
+
 private data class CheckVerify<E : Event>(val expected: String?, val check: (E?) -> Boolean)
+
+/**
+ * Only create the message lambda if trace is enabled. [KLogger.trace] wraps the message lambda before checking the level,
+ * which allocates on every call; on the event dispatch path we want to allocate nothing unless we are actually logging.
+ */
+internal inline fun KLogger.traceIfEnabled(crossinline msg: () -> Any?) {
+	if (isTraceEnabled()) trace { msg() }
+}
@@ -0,0 +1,180 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.event.Event
+import javafx.event.EventHandler
+import javafx.event.EventTarget
+import javafx.event.EventType
+import javafx.scene.Node
+import javafx.scene.Scene
+import javafx.stage.Window
+import javafx.util.Subscription
+import java.lang.ref.WeakReference
+import java.util.WeakHashMap
+
+/**
+ * Owns all [ActionSet]s installed through it on one [EventTarget], and dispatches to them from a single event filter
+ * and a single event handler, instead of each [Action] being registered with the target individually.
+ *
+ * [ActionSet]s are dispatched to in order of descending priority; [ActionSet]s with the same priority in the order they were
+ * installed. Within an [ActionSet], [Action]s are dispatched to in the same order as if the [ActionSet] was installed directly;
+ * [Action]s for the exact [EventType] of the event first, then those of its super types, each in the order they were added.
+ * As soon as the event is consumed, no further [Action]s (and their checks) are evaluated.
+ *
+ * Obtain the dispatcher of a target with [actionDispatcher]:
+ * ```kotlin
+ * node.actionDispatcher().install(toolActionSet, priority = 10)
+ * node.actionDispatcher().install(navigationActionSet)
+ * ```
+ *
+ * Not thread safe; use it on the JavaFX Application Thread.
+ */
+class ActionDispatcher private constructor(target: EventTarget) {
+
+	/**
+	 * An [ActionSet] installed in an [ActionDispatcher]
+	 */
+	data class InstalledActionSet(val actionSet: ActionSet, val priority: Int)
+
+	private val target = WeakReference(target)
+
+	private var installedSets = emptyList<InstalledActionSet>()
+
+	private val filter = Dispatch(filter = true)
+	private val handler = Dispatch(filter = false)
+
+	/**
+	 * The installed [ActionSet]s, in the order they are dispatched to
+	 */
+	val installed: List<InstalledActionSet>
+		get() = installedSets
+
+	operator fun contains(actionSet: ActionSet) = installedSets.any { it.actionSet === actionSet }
+
+	/**
+	 * Install [actionSet] with [priority]. Higher priorities are dispatched to first. If [actionSet] is already installed,
+	 * its priority is updated.
+	 *
+	 * @return a [Subscription] that removes [actionSet] again
+	 */
+	@JvmOverloads
+	fun install(actionSet: ActionSet, priority: Int = 0): Subscription {
+		val target = target.get() ?: return Subscription.EMPTY
+		val firstInstall = installedSets.isEmpty()
+		if (actionSet !in this) actionSet.preInstallSetup()
+		val remaining = installedSets.filter { it.actionSet !== actionSet }
+		/* stable, so sets of equal priority keep their install order */
+		installedSets = (remaining + InstalledActionSet(actionSet, priority)).sortedByDescending { it.priority }
+		if (firstInstall) {
+			target.addEventFilter(Event.ANY, filter)
+			target.addEventHandler(Event.ANY, handler)
+		}
+		invalidate()
+		return Subscription { remove(actionSet) }
+	}
+
+	/**
+	 * Remove [actionSet]. No effect if not installed.
+	 *
+	 * @return true if [actionSet] was installed
+	 */
+	fun remove(actionSet: ActionSet): Boolean {
+		if (actionSet !in this) return false
+		installedSets = installedSets.filter { it.actionSet !== actionSet }
+		if (installedSets.isEmpty()) {
+			target.get()?.apply {
+				removeEventFilter(Event.ANY, filter)
+				removeEventHandler(Event.ANY, handler)
+			}
+		}
+		invalidate()
+		actionSet.actions.forEach { it.cancelCoalesced() }
+		actionSet.postRemoveCleanUp()
+		return true
+	}
+
+	/**
+	 * @return the [Action]s that would be tested for an event of [eventType], in the order they would be tested
+	 */
+	fun actionsFor(eventType: EventType<*>): List<Action<*>> {
+		val ordered = mutableListOf<Action<*>>()
+		for (filter in listOf(true, false)) {
+			installedSets.forEach { (actionSet, _) ->
+				var type: EventType<*>? = eventType
+				while (type != null) {
+					val current = type
+					ordered += actionSet.actions.filter { it.filter == filter && it.eventType == current }
+					type = type.superType
+				}
+			}
+		}
+		return ordered
+	}
+
+	private fun invalidate() {
+		filter.invalidate()
+		handler.invalidate()
+	}
+
+	/**
+	 * The handlers to dispatch to, for each [EventType], flattened over all installed [ActionSet]s.
+	 * Recompiled when the installed sets change, or when an [Action] is added to one of them.
+	 */
+	private inner class Dispatch(private val filter: Boolean) : EventHandler<Event> {
+
+		private val compiled = HashMap<EventType<*>, Array<EventHandler<Event>>>()
+		private var compiledModCount = -1
+
+		fun invalidate() {
+			compiled.clear()
+			compiledModCount = -1
+		}
+
+		override fun handle(event: Event) {
+			val sets = installedSets
+			var modCount = 0
+			for (i in sets.indices) modCount += sets[i].actionSet.modCount
+			if (modCount != compiledModCount) {
+				compiled.clear()
+				compiledModCount = modCount
+			}
+			val handlers = compiled[event.eventType] ?: compile(sets, event.eventType).also { compiled[event.eventType] = it }
+			for (handler in handlers) {
+				if (event.isConsumed) return
+				handler.handle(event)
+			}
+		}
+
+		private fun compile(sets: List<InstalledActionSet>, eventType: EventType<*>): Array<EventHandler<Event>> {
+			val handlers = mutableListOf<EventHandler<Event>>()
+			sets.forEach { (actionSet, _) ->
+				var type: EventType<*>? = eventType
+				while (type != null) {
+					actionSet.handlers(type, filter)?.let { handlers += it }
+					type = type.superType
+				}
+			}
+			return handlers.toTypedArray()
+		}
+	}
+
+	companion object {
+
+		/* for targets without a properties map */
+		private val dispatchers = WeakHashMap<EventTarget, ActionDispatcher>()
+
+		/**
+		 * @return the [ActionDispatcher] of the receiver, created on first use. For a [Node], [Scene] or [Window] it is
+		 * stored in its properties.
+		 */
+		@JvmStatic
+		fun EventTarget.actionDispatcher(): ActionDispatcher {
+			val properties = when (this) {
+				is Node -> properties
+				is Scene -> properties
+				is Window -> properties
+				else -> return synchronized(dispatchers) { dispatchers.getOrPut(this) { ActionDispatcher(this) } }
+			}
+			return properties.getOrPut(ActionDispatcher::class.java) { ActionDispatcher(this) } as ActionDispatcher
+		}
+	}
+}
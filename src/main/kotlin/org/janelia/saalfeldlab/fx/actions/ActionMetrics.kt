@@ -0,0 +1,190 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAccumulator
+import java.util.concurrent.atomic.LongAdder
+import javax.management.ObjectName
+
+/**
+ * Opt-in runtime metrics for [Action]s, keyed by [Action.name].
+ *
+ * When [enabled], each [Action] records
+ *  - how often it was triggered
+ *  - how often it was rejected, per check description (the `condition` passed to [Action.verify])
+ *  - the cumulative and maximum time spent in its [Action.onAction] callback
+ *
+ * [Action]s with the same name share their metrics. When disabled (the default) the only overhead per event is reading [enabled].
+ *
+ * Can be enabled at startup with the system property `saalfx.action.metrics=true`, in which case the [ActionMetricsMXBean]
+ * is registered as well. Otherwise, set [enabled] and optionally call [registerMBean].
+ */
+object ActionMetrics {
+
+	private val LOG = KotlinLogging.logger { }
+
+	/**
+	 * Rejection reason for an [Action] whose required keys were not in the expected state.
+	 */
+	const val KEYS_REJECTION = "keys"
+
+	/**
+	 * Rejection reason for a check without a description.
+	 */
+	const val UNNAMED_CHECK_REJECTION = "unnamed check"
+
+	/**
+	 * Prefix of the rejection reason for a failed [ActionSet.verifyAll] check.
+	 */
+	const val VERIFY_ALL_REJECTION_PREFIX = "verifyAll: "
+
+	@JvmStatic
+	val OBJECT_NAME = ObjectName("org.janelia.saalfeldlab.fx:type=ActionMetrics")
+
+	/**
+	 * Whether [Action]s currently record metrics.
+	 */
+	@JvmField
+	@Volatile
+	var enabled: Boolean = java.lang.Boolean.getBoolean("saalfx.action.metrics")
+
+	private val entries = ConcurrentHashMap<String, Entry>()
+
+	init {
+		if (enabled) registerMBean()
+	}
+
+	/**
+	 * @return the metrics of all [Action]s named [actionName], created if necessary
+	 */
+	operator fun get(actionName: String): Entry = entries.computeIfAbsent(actionName) { Entry(it) }
+
+	/**
+	 * @return the names of all [Action]s that recorded metrics
+	 */
+	val actionNames: Set<String>
+		get() = entries.keys.toSortedSet()
+
+	/**
+	 * Reset the metrics of all [Action]s.
+	 */
+	fun reset() = entries.values.forEach { it.reset() }
+
+	/**
+	 * Register the [ActionMetricsMXBean] with the platform MBean server under [OBJECT_NAME]. No effect if already registered.
+	 */
+	@JvmStatic
+	fun registerMBean() {
+		val server = ManagementFactory.getPlatformMBeanServer()
+		if (!server.isRegistered(OBJECT_NAME)) {
+			server.registerMBean(MBean, OBJECT_NAME)
+			LOG.debug { "Registered $OBJECT_NAME" }
+		}
+	}
+
+	/**
+	 * Remove the [ActionMetricsMXBean] from the platform MBean server. No effect if not registered.
+	 */
+	@JvmStatic
+	fun unregisterMBean() {
+		val server = ManagementFactory.getPlatformMBeanServer()
+		if (server.isRegistered(OBJECT_NAME))
+			server.unregisterMBean(OBJECT_NAME)
+	}
+
+	/**
+	 * Metrics of the [Action]s named [actionName]. Counters are striped, so concurrent updates don't contend.
+	 */
+	class Entry internal constructor(val actionName: String) {
+
+		private val invocations = LongAdder()
+		private val rejections = ConcurrentHashMap<String, LongAdder>()
+		private val totalNanos = LongAdder()
+		private val maxNanos = LongAccumulator({ a, b -> maxOf(a, b) }, 0L)
+
+		val invocationCount: Long
+			get() = invocations.sum()
+
+		val rejectionCount: Long
+			get() = rejections.values.sumOf { it.sum() }
+
+		/**
+		 * Rejection counts, keyed by the description of the check that rejected the event
+		 */
+		val rejectionsByCheck: Map<String, Long>
+			get() = rejections.mapValues { (_, count) -> count.sum() }
+
+		val totalActionNanos: Long
+			get() = totalNanos.sum()
+
+		val maxActionNanos: Long
+			get() = maxNanos.get()
+
+		internal fun invoked(nanos: Long) {
+			invocations.increment()
+			totalNanos.add(nanos)
+			maxNanos.accumulate(nanos)
+		}
+
+		internal fun rejected(check: String) {
+			rejections.computeIfAbsent(check) { LongAdder() }.increment()
+		}
+
+		internal fun reset() {
+			invocations.reset()
+			rejections.clear()
+			totalNanos.reset()
+			maxNanos.reset()
+		}
+
+		override fun toString() = "$actionName(invocations=$invocationCount, rejections=$rejectionCount, totalActionNanos=$totalActionNanos, maxActionNanos=$maxActionNanos)"
+	}
+
+	private object MBean : ActionMetricsMXBean {
+
+		override fun isEnabled() = enabled
+
+		override fun setEnabled(enabled: Boolean) {
+			ActionMetrics.enabled = enabled
+		}
+
+		override fun getActionNames() = actionNames.toList()
+
+		override fun getInvocationCount(actionName: String) = entries[actionName]?.invocationCount ?: 0L
+
+		override fun getRejectionCount(actionName: String) = entries[actionName]?.rejectionCount ?: 0L
+
+		override fun getRejectionsByCheck(actionName: String) = entries[actionName]?.rejectionsByCheck ?: emptyMap()
+
+		override fun getTotalActionTimeNanos(actionName: String) = entries[actionName]?.totalActionNanos ?: 0L
+
+		override fun getMaxActionTimeNanos(actionName: String) = entries[actionName]?.maxActionNanos ?: 0L
+
+		override fun reset() = ActionMetrics.reset()
+	}
+}
+
+/**
+ * JMX view of [ActionMetrics].
+ */
+interface ActionMetricsMXBean {
+
+	fun isEnabled(): Boolean
+
+	fun setEnabled(enabled: Boolean)
+
+	fun getActionNames(): List<String>
+
+	fun getInvocationCount(actionName: String): Long
+
+	fun getRejectionCount(actionName: String): Long
+
+	fun getRejectionsByCheck(actionName: String): Map<String, Long>
+
+	fun getTotalActionTimeNanos(actionName: String): Long
+
+	fun getMaxActionTimeNanos(actionName: String): Long
+
+	fun reset()
+}
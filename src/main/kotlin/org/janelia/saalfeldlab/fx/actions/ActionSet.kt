@@ -1,12 +1,23 @@
 package org.janelia.saalfeldlab.fx.actions
 
+import io.github.oshai.kotlinlogging.KLogger
+import io.github.oshai.kotlinlogging.KotlinLogging
+import javafx.application.Platform
+import javafx.beans.value.ChangeListener
+import javafx.beans.value.ObservableValue
 import javafx.event.Event
 import javafx.event.EventHandler
 import javafx.event.EventTarget
 import javafx.event.EventType
+import javafx.scene.Node
+import javafx.scene.Scene
 import javafx.scene.input.*
 import javafx.util.Subscription
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.removeActionSet
 import org.janelia.saalfeldlab.fx.event.KeyTracker
+import java.lang.ref.WeakReference
+import java.util.IdentityHashMap
 import java.util.function.Consumer
 
 
@@ -55,28 +66,60 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 	val actions = mutableListOf<Action<out Event>>()
 	private val actionHandlerMap = mutableMapOf<EventType<Event>, MutableList<ActionSetActionEventHandler>>()
 	private val actionFilterMap = mutableMapOf<EventType<Event>, MutableList<ActionSetActionEventHandler>>()
+	private val multiplexedHandlerMap = mutableMapOf<EventType<Event>, MultiplexedEventHandler>()
+	private val multiplexedFilterMap = mutableMapOf<EventType<Event>, MultiplexedEventHandler>()
+
+	/**
+	 * If true, [installActionSet] registers a single [EventHandler] (or filter) per [EventType] for this [ActionSet],
+	 * which then dispatches to each [Action] of that [EventType] in the order they were added. This keeps the handler
+	 * chain of the target short when many [Action]s are installed, while preserving the order and consume semantics
+	 * of installing each [Action] individually. The [verifyAll] checks are evaluated once per event before dispatching it
+	 * to the [Action]s, instead of once per [Action], also when the event reaches the multiplexed handlers of several
+	 * [EventType]s (e.g. of [MouseEvent.MOUSE_PRESSED] and [MouseEvent.ANY]); once for the filters and once for the
+	 * handlers. So an [Action] can't change their outcome for the [Action]s after it.
+	 *
+	 * If false (default), each [Action] is registered as its own [EventHandler] (or filter).
+	 *
+	 * Only read during [installActionSet]; changing it while installed has no effect until the next install.
+	 */
+	var multiplexHandlers = false
+
+	/**
+	 * Only meaningful if [multiplexHandlers] is true. If true, a multiplexed handler stops dispatching to the
+	 * remaining [Action]s of this [ActionSet] as soon as the event is consumed. Since an [Action] is never
+	 * triggered by a consumed event this doesn't change which [Action]s trigger, but it does skip evaluating the
+	 * checks of the remaining [Action]s.
+	 */
+	var stopOnConsumed = false
+
+	/**
+	 * Only meaningful if [multiplexHandlers] is true. If true, the multiplexed [KeyEvent.KEY_PRESSED] handler (or filter)
+	 * looks up the [KeyAction]s configured with a [NamedKeyBinding] in a [KeyBindingIndex], and only tests those whose
+	 * binding could match the pressed key, instead of testing every [KeyAction] in turn. [Action]s without a binding are
+	 * still tested for every event, and all [Action]s trigger in the order they were added.
+	 *
+	 * Must be set before this [ActionSet] is first installed.
+	 */
+	var indexKeyBindings = false
 	private val checks = mutableMapOf<EventType<out Event>, MutableList<Pair<String, (Event) -> Boolean>>>()
 
-	init {
-		apply?.let { it(this) }
-	}
+	/**
+	 * Compiled [DispatchTable] for the current [actions] and [checks]. Reset whenever either changes, and
+	 * recompiled when this [ActionSet] is installed, or on the next event if it is already installed.
+	 */
+	private var dispatchTable: DispatchTable? = null
 
-	private fun Action<out Event>.testChecksForEventType(event: Event, eventType: EventType<out Event> = event.eventType): Boolean {
-		val checks = checks[eventType] ?: return true
+	/* the event the multiplexed handlers are dispatching, the reason of the verifyAll check it failed (if any), and how
+	 * many of the multiplexed handlers it reaches haven't handled it yet */
+	private var checkedEvent: Event? = null
+	private var failedCheck: String? = null
+	private var uncheckedHandlers = 0
 
-		for ((reason, check) in checks) {
-			if (!check(event)) {
-				logger.debug { "Verify All Failed: $reason" }
-				return false
-			}
-		}
-		return true
+	init {
+		apply?.let { it(this) }
 	}
 
-	private tailrec fun Action<out Event>.testChecksForInheritedEventTypes(event: Event, eventType: EventType<out Event>? = event.eventType): Boolean {
-		if (eventType == null) return true
-		return if (!testChecksForEventType(event, eventType)) false else testChecksForInheritedEventTypes(event, eventType.superType)
-	}
+	private fun dispatchTable() = dispatchTable ?: DispatchTable().also { dispatchTable = it }
 
 	/**
 	 * Specify a check that will be evaluated for all [Action]s in this [ActionSet] that are triggered by [eventType]
@@ -92,6 +135,7 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 		checks[eventType]?.add(reason to check as (Event) -> Boolean) ?: let {
 			checks[eventType] = mutableListOf(reason to check as (Event) -> Boolean)
 		}
+		dispatchTable = null
 	}
 
 	/**
@@ -132,8 +176,22 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 		actionMap[eventType]?.let { it += handler } ?: let {
 			actionMap[eventType] = mutableListOf(handler)
 		}
+		dispatchTable = null
+		modCount++
 	}
 
+	/**
+	 * Incremented whenever an [Action] is added, so an [ActionDispatcher] knows to recompile
+	 */
+	internal var modCount = 0
+		private set
+
+	/**
+	 * @return the handlers (or filters) registered for exactly [eventType], in the order they were added
+	 */
+	@Suppress("UNCHECKED_CAST")
+	internal fun handlers(eventType: EventType<*>, filter: Boolean): List<EventHandler<Event>>? = (if (filter) actionFilterMap else actionHandlerMap)[eventType as EventType<Event>]
+
 
 	/**
 	 * Add a [KeyAction] created and configured via [withAction]
@@ -390,7 +448,7 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 				throw e
 			}
 		} else {
-			action.logger.trace { "preInvokeCheck failed" }
+			action.logger.traceIfEnabled { "preInvokeCheck failed" }
 		}
 	}
 
@@ -403,8 +461,15 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 	 * @param action the [Action] to handle [event]
 	 * @param event to handle
 	 */
-	protected open fun <E : Event> preInvokeCheck(action: Action<E>, event: E) = action.run {
-		canHandleEvent(event.eventType) && testChecksForInheritedEventTypes(event)
+	protected open fun <E : Event> preInvokeCheck(action: Action<E>, event: E) = dispatchTable()[event.eventType].let { entry ->
+		entry.canHandle(action) && if (event === checkedEvent) passedChecks(action) else entry.testChecks(event, action.logger, action.metrics())
+	}
+
+	/* the outcome of the checks the multiplexed handler evaluated for the checkedEvent */
+	private fun passedChecks(action: Action<*>): Boolean {
+		val reason = failedCheck ?: return true
+		DispatchEntry.rejected(reason, action.logger, action.metrics())
+		return false
 	}
 
 	/**
@@ -417,6 +482,230 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 	 */
 	open fun postRemoveCleanUp() {}
 
+	/**
+	 * Flattened lookup from a concrete [EventType] to everything needed to dispatch an event of that type;
+	 * the [verifyAll] checks registered for it and all of its super types, and the [Action]s of this [ActionSet]
+	 * that can handle it. Entries for the [EventType]s of the current [actions] are compiled eagerly, any other
+	 * [EventType] (e.g. a more specific subtype) is compiled once, on its first lookup.
+	 */
+	private inner class DispatchTable {
+
+		private val entries = HashMap<EventType<*>, DispatchEntry>()
+
+		init {
+			actions.forEach { get(it.eventType) }
+		}
+
+		operator fun get(eventType: EventType<*>): DispatchEntry = entries[eventType] ?: compile(eventType).also { entries[eventType] = it }
+
+		@Suppress("UNCHECKED_CAST")
+		private fun compile(eventType: EventType<*>): DispatchEntry {
+			val inheritedChecks = mutableListOf<Pair<String, (Event) -> Boolean>>()
+			var type: EventType<*>? = eventType
+			while (type != null) {
+				checks[type]?.let { inheritedChecks += it }
+				type = type.superType
+			}
+			val candidates = actions.filter { it.canHandleEvent(eventType) } as List<Action<Event>>
+			return DispatchEntry(inheritedChecks.toTypedArray(), candidates.toTypedArray())
+		}
+	}
+
+	/**
+	 * A single compiled row of the [DispatchTable].
+	 *
+	 * @property checks the inherited [verifyAll] checks, ordered from the most specific [EventType] to [Event.ANY]
+	 * @property actions the [Action]s that can handle the [EventType], in the order they were added
+	 */
+	private class DispatchEntry(val checks: Array<Pair<String, (Event) -> Boolean>>, val actions: Array<Action<Event>>) {
+
+		private val candidates: Set<Action<*>> = actions.toHashSet()
+
+		fun canHandle(action: Action<out Event>) = action in candidates
+
+		fun testChecks(event: Event, logger: KLogger, metrics: ActionMetrics.Entry? = null): Boolean {
+			val reason = failedCheck(event) ?: return true
+			rejected(reason, logger, metrics)
+			return false
+		}
+
+		/**
+		 * @return the reason of the first check that fails for [event], or null if all pass
+		 */
+		fun failedCheck(event: Event): String? {
+			for ((reason, check) in checks) {
+				if (!check(event)) return reason
+			}
+			return null
+		}
+
+		companion object {
+
+			fun rejected(reason: String, logger: KLogger, metrics: ActionMetrics.Entry?) {
+				metrics?.rejected("${ActionMetrics.VERIFY_ALL_REJECTION_PREFIX}$reason")
+				if (logger.isDebugEnabled()) logger.debug { "Verify All Failed: $reason" }
+			}
+		}
+	}
+
+	/**
+	 * Single [EventHandler] that dispatches to all [handlers] registered for one [EventType] in this [ActionSet].
+	 *
+	 * @property handlers live view of the handlers for the [EventType], so [Action]s added later are dispatched to as well.
+	 * @property multiplexedMap the multiplexed handlers (or filters) of this [ActionSet] this one belongs to
+	 */
+	private inner class MultiplexedEventHandler(
+		val eventType: EventType<Event>,
+		val handlers: List<ActionSetActionEventHandler>,
+		private val multiplexedMap: Map<EventType<Event>, MultiplexedEventHandler>,
+	) : EventHandler<Event> {
+
+		private val keyBindingDispatch = if (indexKeyBindings && eventType == KeyEvent.KEY_PRESSED) KeyBindingDispatch(handlers) else null
+
+		override fun handle(event: Event) {
+			/* An event reaches the handlers of its type first, then those of each super type; the checks are evaluated by the
+			 * first and kept until the last. If an action fires another event on the same target, the remaining actions
+			 * for this one evaluate the checks themselves. */
+			if (event !== checkedEvent) {
+				checkedEvent = event
+				failedCheck = dispatchTable()[event.eventType].failedCheck(event)
+				uncheckedHandlers = handlersFromHere()
+			}
+			try {
+				dispatch(event)
+			} finally {
+				if (event === checkedEvent && --uncheckedHandlers <= 0) {
+					checkedEvent = null
+					failedCheck = null
+				}
+			}
+		}
+
+		/* the number of multiplexed handlers an event still reaches, including this one */
+		private fun handlersFromHere(): Int {
+			var count = 0
+			var type: EventType<*>? = eventType
+			while (type != null) {
+				if (type in multiplexedMap) count++
+				type = type.superType
+			}
+			return count
+		}
+
+		private fun dispatch(event: Event) {
+			if (keyBindingDispatch != null && event is KeyEvent && KeyBindingIndex.isIndexed(event)) {
+				keyBindingDispatch.handle(event)
+				return
+			}
+			var i = 0
+			while (i < handlers.size) {
+				if (stopOnConsumed && event.isConsumed) return
+				handlers[i++].handle(event)
+			}
+		}
+
+		fun release() = keyBindingDispatch?.release()
+
+		override fun toString(): String {
+			return "${this@ActionSet.name.ifEmpty { super.toString() }}: $eventType"
+		}
+	}
+
+	/**
+	 * Dispatches a [KeyEvent.KEY_PRESSED] event to the [handlers] that could trigger for it. The [KeyAction]s with a
+	 * [KeyAction.keyBinding] are only considered if the [KeyBindingIndex] returns their binding as a candidate; all other
+	 * handlers are always considered. Recompiled when [handlers] grows, or after [release].
+	 */
+	private inner class KeyBindingDispatch(val handlers: List<ActionSetActionEventHandler>) {
+
+		private val index = KeyBindingIndex()
+		/* by identity; NamedKeyCombination equality only compares names */
+		private val positionsByBinding = IdentityHashMap<NamedKeyBinding, IntArray>()
+		private var unindexed = IntArray(0)
+		private var compiledSize = -1
+
+		private var candidates = IntArray(0)
+		private var dispatching = false
+
+		private fun compile() {
+			if (compiledSize == handlers.size) return
+			index.clear()
+			positionsByBinding.clear()
+			val unindexedPositions = mutableListOf<Int>()
+			handlers.forEachIndexed { position, handler ->
+				val binding = (handler.action as? KeyAction)?.takeIf { it.eventType == KeyEvent.KEY_PRESSED }?.keyBinding
+				if (binding == null)
+					unindexedPositions += position
+				else {
+					index.add(binding)
+					positionsByBinding[binding] = positionsByBinding[binding]?.plus(position) ?: intArrayOf(position)
+				}
+			}
+			unindexed = unindexedPositions.toIntArray()
+			candidates = IntArray(handlers.size)
+			compiledSize = handlers.size
+		}
+
+		/**
+		 * Stop following the bindings, which may be shared with other [ActionSet]s and outlive this one. Compiled again on
+		 * the next event.
+		 */
+		fun release() {
+			index.clear()
+			positionsByBinding.clear()
+			compiledSize = -1
+		}
+
+		fun handle(event: KeyEvent) {
+			compile()
+			/* an action may fire another key event on the same target; don't clobber the candidates of the outer dispatch */
+			val positions = if (dispatching) IntArray(handlers.size) else candidates
+			var count = 0
+			index.forEachCandidate(event) { binding ->
+				positionsByBinding[binding]?.let { for (position in it) positions[count++] = position }
+			}
+			/* insertion sort; there are rarely more than a few candidates */
+			for (i in 1 until count) {
+				val position = positions[i]
+				var j = i - 1
+				while (j >= 0 && positions[j] > position) {
+					positions[j + 1] = positions[j]
+					j--
+				}
+				positions[j + 1] = position
+			}
+
+			val wasDispatching = dispatching
+			dispatching = true
+			try {
+				/* merge with the unindexed handlers, to keep the order in which the actions were added */
+				var candidate = 0
+				var other = 0
+				while (candidate < count || other < unindexed.size) {
+					if (stopOnConsumed && event.isConsumed) return
+					val next = when {
+						other == unindexed.size -> positions[candidate++]
+						candidate == count -> unindexed[other++]
+						positions[candidate] < unindexed[other] -> positions[candidate++]
+						else -> unindexed[other++]
+					}
+					handlers[next].handle(event)
+				}
+			} finally {
+				dispatching = wasDispatching
+			}
+		}
+	}
+
+	private fun multiplexedHandlers(filter: Boolean): Map<EventType<Event>, MultiplexedEventHandler> {
+		val actionMap = if (filter) actionFilterMap else actionHandlerMap
+		val multiplexedMap = if (filter) multiplexedFilterMap else multiplexedHandlerMap
+		actionMap.forEach { (eventType, handlers) ->
+			multiplexedMap.getOrPut(eventType) { MultiplexedEventHandler(eventType, handlers, multiplexedMap) }
+		}
+		return multiplexedMap
+	}
+
 	private inner class ActionSetActionEventHandler(val action: Action<out Event>) : EventHandler<Event> {
 
 		@Suppress("UNCHECKED_CAST")
@@ -432,6 +721,8 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 
 	companion object {
 
+		private val LOG = KotlinLogging.logger { }
+
 		/**
 		 * Install [actionSet] in the receiver [EventTarget]
 		 *
@@ -440,6 +731,109 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 		@JvmStatic
 		fun EventTarget.installActionSet(actionSet: ActionSet) : Subscription {
 			actionSet.preInstallSetup()
+			installAfterSetup(actionSet)
+			return Subscription { removeActionSet(actionSet) }
+		}
+
+		/**
+		 * Install [actionSet] in the receiver [Node] until the node leaves the scene graph.
+		 *
+		 * [actionSet] is removed when the [Node.sceneProperty] changes to `null` after the node was part of a [Scene], and
+		 * is still `null` once the JavaFX Application Thread processes its next runnable. If the node is not part of a
+		 * [Scene] yet, [actionSet] is installed and stays installed until the node was added to one, and removed again.
+		 * Moving the node to a different parent, or to a different [Scene], does not remove [actionSet].
+		 *
+		 * In contrast to [installActionSet], the returned [Subscription] only references the node weakly, so keeping it around
+		 * doesn't keep the node (and the scene graph it is part of) in memory.
+		 *
+		 * @param actionSet to install
+		 * @return a [Subscription] that removes [actionSet] early
+		 */
+		@JvmStatic
+		fun Node.installActionSetUntilDetached(actionSet: ActionSet): Subscription {
+			installActionSet(actionSet)
+			return DetachingInstallation(this, actionSet).also { sceneProperty().addListener(it) }
+		}
+
+		/**
+		 * Remove [actionSet] from the receiver [EventTarget]. No effect if not installed.
+		 *
+		 * @param actionSet to remove
+		 */
+		@JvmStatic
+		fun EventTarget.removeActionSet(actionSet: ActionSet) {
+			removeHandlers(actionSet)
+			if (this is Node) ActionSetLeakDetector.removed(this, actionSet)
+			actionSet.postRemoveCleanUp()
+		}
+
+		/**
+		 * Replace the [old] [ActionSet]s installed in the receiver [EventTarget] with the [new] ones, e.g. when switching tools.
+		 *
+		 * The difference is computed per [ActionSet]: those in both [old] and [new] stay installed untouched, without their
+		 * handlers being removed and added again, and without [postRemoveCleanUp] and [preInstallSetup] being called. The
+		 * [old] sets that are not in [new] are removed first, then the [new] sets that are not in [old] are installed, each
+		 * completely, including the hooks; handlers of different [ActionSet]s are not compared.
+		 *
+		 * If removing or installing any [ActionSet] throws, the changes made so far are reverted, so the receiver has the
+		 * [old] [ActionSet]s installed again, in the order of [old], and the exception is rethrown. An [ActionSet] whose
+		 * [preInstallSetup] threw was never installed, so it isn't removed again and its [postRemoveCleanUp] isn't called.
+		 *
+		 * @param old the currently installed [ActionSet]s to replace
+		 * @param new the [ActionSet]s that should be installed afterward
+		 */
+		@JvmStatic
+		fun EventTarget.swapActionSets(old: Collection<ActionSet>, new: Collection<ActionSet>) {
+			val toRemove = old.filter { set -> new.none { it === set } }
+			val toInstall = new.filter { set -> old.none { it === set } }
+
+			val removed = mutableListOf<ActionSet>()
+			val installed = mutableListOf<ActionSet>()
+			try {
+				toRemove.forEach {
+					removed += it
+					removeActionSet(it)
+				}
+				toInstall.forEach {
+					it.preInstallSetup()
+					installed += it
+					installAfterSetup(it)
+				}
+			} catch (e: Exception) {
+				LOG.error(e) { "Unable to swap ActionSets, restoring ${old.map { it.name }}" }
+				/* removing handlers that were never added has no effect, so this also reverts a partially added set */
+				installed.asReversed().forEach { removeActionSet(it) }
+				/* restore the order of old, which is the order the handlers are called in; the kept sets after the first
+				 * removed one are moved back behind it, without their hooks */
+				val firstRemoved = old.indexOfFirst { set -> removed.any { it === set } }
+				val restored = if (firstRemoved < 0) emptyList() else old.drop(firstRemoved)
+				val kept = restored.filter { set -> removed.none { it === set } }
+				kept.forEach { removeHandlers(it) }
+				restored.forEach { set -> if (kept.any { it === set }) addHandlers(set) else installActionSet(set) }
+				throw e
+			}
+		}
+
+		/**
+		 * Replace [old] with [new] in the receiver [EventTarget]. No effect if [old] and [new] are the same.
+		 *
+		 * @see swapActionSets
+		 */
+		@JvmStatic
+		fun EventTarget.swapActionSets(old: ActionSet?, new: ActionSet?) = swapActionSets(listOfNotNull(old), listOfNotNull(new))
+
+		private fun EventTarget.installAfterSetup(actionSet: ActionSet) {
+			addHandlers(actionSet)
+			if (this is Node && ActionSetLeakDetector.enabled) ActionSetLeakDetector.installed(this, actionSet)
+		}
+
+		private fun EventTarget.addHandlers(actionSet: ActionSet) {
+			actionSet.dispatchTable()
+			if (actionSet.multiplexHandlers) {
+				actionSet.multiplexedHandlers(filter = true).forEach { (eventType, handler) -> addEventFilter(eventType, handler) }
+				actionSet.multiplexedHandlers(filter = false).forEach { (eventType, handler) -> addEventHandler(eventType, handler) }
+				return
+			}
 			actionSet.actionFilterMap.forEach { (eventType, actions) ->
 				actions.forEach { action ->
 					addEventFilter(eventType, action)
@@ -450,16 +844,9 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 					addEventHandler(eventType, action)
 				}
 			}
-			return Subscription { removeActionSet(actionSet) }
 		}
 
-		/**
-		 * Remove [actionSet] from the receiver [EventTarget]. No effect if not installed.
-		 *
-		 * @param actionSet to remove
-		 */
-		@JvmStatic
-		fun EventTarget.removeActionSet(actionSet: ActionSet) {
+		private fun EventTarget.removeHandlers(actionSet: ActionSet) {
 			actionSet.actionFilterMap.forEach { (eventType, actions) ->
 				actions.forEach { action ->
 					removeEventFilter(eventType, action)
@@ -470,7 +857,58 @@ open class ActionSet(val name: String, var keyTracker: () -> KeyTracker? = { nul
 					removeEventHandler(eventType, action)
 				}
 			}
+			/* May have been installed either way, so remove any multiplexed handlers as well */
+			actionSet.multiplexedFilterMap.forEach { (eventType, handler) -> removeEventFilter(eventType, handler) }
+			actionSet.multiplexedHandlerMap.forEach { (eventType, handler) -> removeEventHandler(eventType, handler) }
+			/* the key binding index listens to the bindings of the actions */
+			actionSet.multiplexedFilterMap.values.forEach { it.release() }
+			actionSet.multiplexedHandlerMap.values.forEach { it.release() }
+			/* don't deliver events that were coalesced while installed */
+			actionSet.actions.forEach { it.cancelCoalesced() }
+		}
+	}
+}
+
+/**
+ * Removes [actionSet] from [node] when [node] leaves the scene graph, or when unsubscribed, whichever comes first.
+ * Only references [node] weakly; it's registered as listener of the [Node.sceneProperty] of [node], so it lives as long as [node].
+ *
+ * Moving a node to another parent removes it from the old parent first, so its scene is briefly null. Whether the node
+ * left the scene graph is therefore only decided later, on the JavaFX Application Thread.
+ */
+private class DetachingInstallation(node: Node, private val actionSet: ActionSet) : ChangeListener<Scene?>, Subscription {
+
+	private val node = WeakReference(node)
+
+	private var wasAttached = node.scene != null
+
+	private var removed = false
+
+	private var checkScheduled = false
+
+	override fun changed(observable: ObservableValue<out Scene?>, oldScene: Scene?, newScene: Scene?) {
+		when {
+			newScene != null -> wasAttached = true
+			wasAttached && !checkScheduled -> {
+				checkScheduled = true
+				Platform.runLater {
+					checkScheduled = false
+					if (node.get()?.scene == null) unsubscribe()
+				}
+			}
+		}
+	}
+
+	override fun unsubscribe() {
+		if (removed) return
+		removed = true
+		val node = node.get()
+		if (node == null) {
+			/* the handlers were collected with the node */
 			actionSet.postRemoveCleanUp()
+			return
 		}
+		node.sceneProperty().removeListener(this)
+		node.removeActionSet(actionSet)
 	}
 }
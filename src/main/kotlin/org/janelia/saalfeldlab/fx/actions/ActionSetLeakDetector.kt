@@ -0,0 +1,103 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import javafx.scene.Node
+import javafx.scene.Parent
+import java.lang.ref.WeakReference
+import java.util.WeakHashMap
+
+/**
+ * Debug aid to find [ActionSet]s that are still installed on [Node]s that are no longer part of a scene graph.
+ *
+ * When [enabled], every [ActionSet] installed on a [Node] with [ActionSet.Companion.installActionSet] is tracked until
+ * it is removed with [ActionSet.Companion.removeActionSet]. Nodes are only referenced weakly, so tracking alone doesn't
+ * keep them in memory. A node that is detached but still reachable, with [ActionSet]s installed, is usually a leak;
+ * something still references it, for example the [javafx.util.Subscription] returned by the installation, or a
+ * [ActionSet.keyTracker] lambda. Consider [ActionSet.Companion.installActionSetUntilDetached] for those nodes.
+ *
+ * Can be enabled at startup with the system property `saalfx.action.leakDetection=true`. Only installations while
+ * enabled are tracked. Intended to be queried on the JavaFX Application Thread, e.g. after closing a viewer and
+ * requesting a garbage collection.
+ */
+object ActionSetLeakDetector {
+
+	private val LOG = KotlinLogging.logger { }
+
+	/**
+	 * Whether installations of [ActionSet]s are currently tracked.
+	 */
+	@JvmField
+	@Volatile
+	var enabled: Boolean = java.lang.Boolean.getBoolean("saalfx.action.leakDetection")
+
+	/* the ActionSets are only referenced weakly as well; their actions often reference the node they are installed on,
+	 * which would keep the (weak) key reachable. The handlers installed on the node keep them alive. */
+	private val installations = WeakHashMap<Node, MutableList<WeakReference<ActionSet>>>()
+
+	/**
+	 * [ActionSet]s that are still installed on a detached [Node].
+	 *
+	 * @param node description of the detached node
+	 * @param actionSets names of the [ActionSet]s still installed on it
+	 * @param retainedNodes the number of nodes in the detached subgraph the node is part of; these are kept in memory
+	 * for as long as the node is.
+	 */
+	data class Leak(val node: String, val actionSets: List<String>, val retainedNodes: Int)
+
+	internal fun installed(node: Node, actionSet: ActionSet) = synchronized(installations) {
+		installations.getOrPut(node) { mutableListOf() } += WeakReference(actionSet)
+	}
+
+	internal fun removed(node: Node, actionSet: ActionSet) = synchronized(installations) {
+		if (installations.isEmpty()) return@synchronized
+		val actionSets = installations[node] ?: return@synchronized
+		actionSets.removeIf { it.get().let { installed -> installed == null || installed === actionSet } }
+		if (actionSets.isEmpty()) installations.remove(node)
+	}
+
+	/**
+	 * @return the tracked [Node]s that are not part of a [javafx.scene.Scene] but still have [ActionSet]s installed,
+	 * largest retained subgraph first
+	 */
+	@JvmStatic
+	fun findLeaks(): List<Leak> {
+		val detached = synchronized(installations) {
+			installations
+				.filterKeys { it.scene == null }
+				.mapValues { (_, actionSets) -> actionSets.mapNotNull { it.get()?.name } }
+				.filterValues { it.isNotEmpty() }
+		}
+		return detached
+			.map { (node, actionSets) -> Leak(node.toString(), actionSets, retainedNodes(node)) }
+			.sortedByDescending { it.retainedNodes }
+	}
+
+	/**
+	 * Log a warning for each result of [findLeaks].
+	 *
+	 * @return the result of [findLeaks]
+	 */
+	@JvmStatic
+	fun report(): List<Leak> = findLeaks().onEach { leak ->
+		LOG.warn { "ActionSets ${leak.actionSets} still installed on detached node ${leak.node}, retaining ${leak.retainedNodes} nodes" }
+	}
+
+	/**
+	 * Stop tracking all current installations.
+	 */
+	@JvmStatic
+	fun clear() = synchronized(installations) { installations.clear() }
+
+	private fun retainedNodes(node: Node): Int {
+		var root = node
+		while (true) root = root.parent ?: break
+		var count = 0
+		val pending = ArrayDeque<Node>().apply { add(root) }
+		while (pending.isNotEmpty()) {
+			val current = pending.removeLast()
+			count++
+			(current as? Parent)?.childrenUnmodifiable?.let { pending.addAll(it) }
+		}
+		return count
+	}
+}
@@ -1,9 +1,17 @@
 package org.janelia.saalfeldlab.fx.actions
 
+import io.github.oshai.kotlinlogging.KotlinLogging
 import javafx.event.Event
 import org.janelia.saalfeldlab.fx.actions.Action.Companion.onAction
+import java.lang.invoke.LambdaConversionException
+import java.lang.invoke.LambdaMetafactory
+import java.lang.invoke.MethodHandles
+import java.lang.invoke.MethodType
+import java.lang.reflect.Modifier
+import java.util.function.Supplier
 import kotlin.properties.PropertyDelegateProvider
 import kotlin.properties.ReadWriteProperty
+import kotlin.reflect.KFunction
 import kotlin.reflect.KMutableProperty0
 import kotlin.reflect.KProperty
 
@@ -77,15 +85,71 @@ interface ActionState {
 		/**
 		 * Provides a factory function to create a new instance of [ActionState] using its primary constructor.
 		 *
+		 * The factory is compiled once per type (see [factory]), so creating an instance doesn't use reflection.
+		 *
 		 * @param A The specific type of [ActionState] being created.
 		 * @return A factory function that produces instances of type [A].
 		 */
-		inline fun <reified A : ActionState> newByReflection(): () -> A {
-			val constructor = A::class.constructors.firstOrNull { it.parameters.isEmpty() || it.parameters.all { param -> param.isOptional } }
-				?: throw NoSuchMethodException("No constructor found for ${A::class.simpleName} with either no parameters, or all optional parameters")
-			return { constructor.callBy(emptyMap()) }
+		inline fun <reified A : ActionState> newByReflection(): () -> A = factory(A::class.java)
+
+		/**
+		 * Provides a factory function to create a new instance of [type] using a constructor with either no parameters,
+		 * or all optional parameters.
+		 *
+		 * The factory is compiled once per type, and cached. If [type] has a no-arg constructor on the JVM (this includes
+		 * a Kotlin primary constructor with only optional parameters) the factory calls it directly, through a
+		 * [LambdaMetafactory] generated [Supplier]. Otherwise, it falls back to [KFunction.callBy].
+		 *
+		 * @param A The specific type of [ActionState] being created.
+		 * @param type The class of [A]
+		 * @return A factory function that produces instances of type [A].
+		 * @throws NoSuchMethodException if [type] has no constructor with either no parameters, or all optional parameters
+		 */
+		@Suppress("UNCHECKED_CAST")
+		fun <A : ActionState> factory(type: Class<A>): () -> A = ActionStateFactories.get(type) as () -> A
+	}
+}
+
+/**
+ * Compiled [ActionState] factories, per type.
+ */
+private object ActionStateFactories : ClassValue<() -> ActionState>() {
+
+	private val LOG = KotlinLogging.logger { }
+
+	override fun computeValue(type: Class<*>): () -> ActionState {
+		if (type.declaredConstructors.none { it.parameterCount == 0 } || Modifier.isAbstract(type.modifiers))
+			return callByFactory(type)
+		return try {
+			val lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+			val constructor = lookup.findConstructor(type, MethodType.methodType(Void.TYPE))
+			try {
+				val supplier = LambdaMetafactory.metafactory(
+					lookup,
+					"get",
+					MethodType.methodType(Supplier::class.java),
+					MethodType.methodType(Any::class.java),
+					constructor,
+					MethodType.methodType(type)
+				).target.invoke() as Supplier<*>
+				val factory: () -> ActionState = { supplier.get() as ActionState }
+				factory
+			} catch (e: LambdaConversionException) {
+				LOG.debug(e) { "Unable to generate a Supplier for $type, using a MethodHandle instead" }
+				val handle = constructor.asType(MethodType.methodType(Any::class.java))
+				val factory: () -> ActionState = { handle.invoke() as ActionState }
+				factory
+			}
+		} catch (e: ReflectiveOperationException) {
+			LOG.debug(e) { "No accessible no-arg constructor for $type, using callBy instead" }
+			callByFactory(type)
 		}
+	}
 
+	private fun callByFactory(type: Class<*>): () -> ActionState {
+		val constructor = type.kotlin.constructors.firstOrNull { it.parameters.isEmpty() || it.parameters.all { param -> param.isOptional } }
+			?: throw NoSuchMethodException("No constructor found for ${type.simpleName} with either no parameters, or all optional parameters")
+		return { constructor.callBy(emptyMap()) as ActionState }
 	}
 }
 
@@ -109,9 +173,8 @@ open class VerifiablePropertyActionState(vararg delegates: Any) : ActionState {
 	}
 
 	override fun <E : Event> verifyState(action: Action<E>) {
-		this@VerifiablePropertyActionState.verifiableProperties.forEach { (_, verifiable) ->
+		for (verifiable in verifiableProperties.values)
 			verifiable.registerVerify(action)
-		}
 	}
 
 }
@@ -137,12 +200,15 @@ class Verifiable<T>(
 
 	private var value: T? = null
 
+	/* bound once, so registering doesn't create a new check for every state */
+	private val check: (Event?) -> Boolean = { generateVerifiedProperty() }
+
 	internal fun getValue(): T? {
 		return value
 	}
 
 	fun <E : Event> registerVerify(action: Action<E>) {
-		action.verify(expected) { generateVerifiedProperty() }
+		action.verify(expected, check)
 	}
 
 	private fun generateVerifiedProperty(): Boolean {
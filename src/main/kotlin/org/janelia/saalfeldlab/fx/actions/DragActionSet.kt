@@ -54,6 +54,16 @@ open class DragActionSet @JvmOverloads constructor(
 		verify { isDragging }
 	}
 
+	/* Delivers the last coalesced drag on release, whether or not the dragReleaseAction is valid for it. A filter that is
+	 * added first, so it runs before the dragReleaseAction. */
+	private val flushDragOnRelease = MOUSE_RELEASED {
+		this.name = "${this@DragActionSet.name}.flush coalesced drag"
+		this.filter = true
+		consume = false
+		ignoreKeys()
+		onAction { dragAction.flushCoalesced() }
+	}
+
 	/**
 	 * [MOUSE_RELEASED] [Action]. Can be access for further configuration
 	 */
@@ -80,6 +90,20 @@ open class DragActionSet @JvmOverloads constructor(
 	 */
 	var relative = false
 
+	/**
+	 * If true, all [MOUSE_DRAGGED] events between two JavaFX pulses are collapsed into a single [onDrag] callback with
+	 * the latest event. [startX],[startY] are only updated for the events that are delivered, so when [relative] is true
+	 * the delta in the callback is the accumulated delta since the previous callback. The last drag event is always
+	 * delivered on [MOUSE_RELEASED] before [onDragReleased], also if [dragReleaseAction] is not valid for the release.
+	 *
+	 * @see Action.coalescePerPulse
+	 */
+	var coalesceDrags: Boolean
+		get() = dragAction.coalescePerPulse
+		set(value) {
+			dragAction.coalescePerPulse = value
+		}
+
 	private val readOnlyIsDraggingWrapper = ReadOnlyBooleanWrapper()
 
 	/**
@@ -168,6 +192,8 @@ open class DragActionSet @JvmOverloads constructor(
 		dragReleaseAction.apply {
 			verifyEventNotNull()
 			onAction {
+				/* usually flushed already, unless the release was consumed before it reached the filter that flushes it */
+				dragAction.flushCoalesced()
 				endDragState()
 				onDragReleased(it!!)
 				nextClickFromDragRelease = true
@@ -3,6 +3,7 @@ package org.janelia.saalfeldlab.fx.actions
 import javafx.event.EventType
 import javafx.scene.input.KeyCode
 import javafx.scene.input.KeyEvent
+import org.janelia.saalfeldlab.fx.event.KeyMask
 import java.util.function.Consumer
 
 /**
@@ -15,7 +16,13 @@ import java.util.function.Consumer
  */
 class KeyAction(eventType: EventType<KeyEvent>) : Action<KeyEvent>(eventType) {
 
-	private var keysReleased: List<KeyCode>? = null
+	private var keysReleased: (() -> KeyMask)? = null
+
+	/**
+	 * The [NamedKeyBinding] this [KeyAction] was configured with via [keyMatchesBinding], if any
+	 */
+	var keyBinding: NamedKeyBinding? = null
+		private set
 
 
 	/**
@@ -42,16 +49,19 @@ class KeyAction(eventType: EventType<KeyEvent>) : Action<KeyEvent>(eventType) {
 
 
 		if (name == null) name = namedKeyBinding.keyBindingName
+		keyBinding = namedKeyBinding
 		ignoreKeys()
-		if (eventType == KeyEvent.KEY_RELEASED)
-			keysReleased(*namedKeyBinding.keyCodes.toTypedArray())
-		else
+		if (eventType == KeyEvent.KEY_RELEASED) {
+			keysReleased()
+			/* read the binding's cached mask on each event, so rebinding takes effect */
+			keysReleased = { namedKeyBinding.keyMask }
+		} else
 			verify { event ->
 				/* always valid here if the event is null; it indicates we are triggering the action programmatically, not via an Event */
 				event ?: return@verify true
 
 				namedKeyBinding.matches(event, keyTracker(), keysExclusive).also { match ->
-					if (!match) logger.trace { "key did not match bindings" }
+					if (!match) logger.traceIfEnabled { "key did not match bindings" }
 				}
 			}
 	}
@@ -67,29 +77,22 @@ class KeyAction(eventType: EventType<KeyEvent>) : Action<KeyEvent>(eventType) {
 	 */
 	fun keysReleased(vararg keyCodes: KeyCode) {
 		ignoreKeys()
-		verify {
-			val keyTracker = keyTracker()
-			val otherKeys = keyTracker?.getActiveKeyCodes(true)
-			val otherKeysAreDown = otherKeys?.let { keyTracker.areKeysDown(*otherKeys.toTypedArray()) } ?: false
-			val onlyOtherKeys = keyTracker?.activeKeyCount() == otherKeys?.size && (otherKeys?.size ?: -1) > 0
-			if (keysExclusive && otherKeysAreDown && onlyOtherKeys) {
-				true
-			} else otherKeysAreDown
-		}
-		keysReleased = listOf(*keyCodes)
+		/* The currently active keys are trivially down, regardless of exclusivity; all that's required is a key tracker */
+		verify { keyTracker() != null }
+		val keys = KeyMask.of(*keyCodes)
+		keysReleased = { keys }
 	}
 
 	override fun verifyKeys(event: KeyEvent): Boolean {
-		val keysValid = super.verifyKeys(event) && keysReleased?.let {
+		val keysValid = super.verifyKeys(event) && keysReleased?.invoke()?.let {
 			// If we are checking a key on a release, we can't use the keyTracker
 			val keyReleased = event.code!!
-			val otherKeys = it - keyReleased
 			eventType == KeyEvent.KEY_RELEASED && /*ensure we are a KEY_RELEASED event */
 					(it.isEmpty() || keyReleased in it) && /* ensure the key that was released was a trigger key*/
-					keyTracker()?.areKeysDown(*otherKeys.toTypedArray()) ?: false /* ensure all OTHER trigger keys are down. */
+					keyTracker()?.areKeysDownExcept(it, keyReleased) ?: false /* ensure all OTHER trigger keys are down. */
 		} ?: true
 		return keysValid.also {
-			if (!it) logger.trace { "keys invalid" }
+			if (!it) logger.traceIfEnabled { "keys invalid" }
 		}
 	}
 
@@ -0,0 +1,168 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import com.sun.javafx.tk.Toolkit
+import javafx.beans.value.ChangeListener
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyCodeCombination
+import javafx.scene.input.KeyCombination
+import javafx.scene.input.KeyEvent
+import java.util.IdentityHashMap
+
+/**
+ * Index of [NamedKeyBinding]s by the key state that triggers them; the [KeyCode] of the [KeyCodeCombination] (if any)
+ * and the modifier keys of the combination.
+ *
+ * For a [KeyEvent.KEY_PRESSED] event, [forEachCandidate] visits only the bindings whose code is the code of the event
+ * (or that have no code), and whose modifiers are all down for the event. This is a superset of the bindings that
+ * [NamedKeyBinding.matches] the event, for non-modifier keys. Since a [KeyTracker] based match doesn't depend on the
+ * code of the event, for modifier key events all bindings are candidates; see [isIndexed].
+ *
+ * The index follows changes to the [NamedKeyBinding.primaryCombinationProperty] of each indexed binding, so it is
+ * referenced by each indexed binding until it is [remove]d or [clear]ed. Bindings are indexed by identity; different
+ * bindings with the same name are indexed separately.
+ * Not thread safe; intended to be used and modified on the JavaFX Application Thread.
+ *
+ * @constructor an empty index
+ */
+class KeyBindingIndex() {
+
+	/**
+	 * Index all bindings of [combinations]. Bindings added to [combinations] later are not indexed.
+	 */
+	constructor(combinations: NamedKeyCombination.CombinationMap) : this() {
+		combinations.values.forEach { add(it) }
+	}
+
+	/* one bucket per (code, modifiers) slot; copy on write, so bindings can be re-indexed while iterating */
+	private val buckets = arrayOfNulls<Array<NamedKeyBinding>>(CODE_SLOTS * MODIFIER_STATES)
+
+	private val indexed = IdentityHashMap<NamedKeyBinding, IndexedBinding>()
+
+	private class IndexedBinding(var slot: Int, val listener: ChangeListener<KeyCombination>)
+
+	/**
+	 * All indexed bindings
+	 */
+	val bindings: Set<NamedKeyBinding>
+		get() = indexed.keys
+
+	operator fun contains(binding: NamedKeyBinding) = binding in indexed
+
+	/**
+	 * Add [binding] to the index. No effect if already indexed.
+	 */
+	fun add(binding: NamedKeyBinding) {
+		if (binding in indexed) return
+		val listener = ChangeListener<KeyCombination> { _, _, combination -> reindex(binding, combination) }
+		val slot = slot(binding.primaryCombinationProperty.get())
+		indexed[binding] = IndexedBinding(slot, listener)
+		insert(slot, binding)
+		binding.primaryCombinationProperty.addListener(listener)
+	}
+
+	/**
+	 * Remove [binding] from the index. No effect if not indexed.
+	 */
+	fun remove(binding: NamedKeyBinding) {
+		val entry = indexed.remove(binding) ?: return
+		binding.primaryCombinationProperty.removeListener(entry.listener)
+		delete(entry.slot, binding)
+	}
+
+	/**
+	 * Remove all bindings from the index
+	 */
+	fun clear() = indexed.keys.toList().forEach { remove(it) }
+
+	/**
+	 * @return the indexed bindings that could match [event]
+	 */
+	fun candidates(event: KeyEvent): List<NamedKeyBinding> {
+		if (!isIndexed(event)) return indexed.keys.toList()
+		return mutableListOf<NamedKeyBinding>().also { candidates -> forEachCandidate(event) { candidates += it } }
+	}
+
+	/**
+	 * Visit each indexed binding that could match [event], if [isIndexed]. Each binding is visited at most once.
+	 * Does not allocate.
+	 */
+	inline fun forEachCandidate(event: KeyEvent, visit: (NamedKeyBinding) -> Unit) {
+		val codeSlot = event.code.ordinal
+		val modifiers = modifierBits(event)
+		/* all subsets of the modifiers that are down, including none */
+		var subset = modifiers
+		while (true) {
+			bucket(codeSlot, subset)?.let { for (binding in it) visit(binding) }
+			bucket(NO_CODE_SLOT, subset)?.let { for (binding in it) visit(binding) }
+			if (subset == 0) break
+			subset = (subset - 1) and modifiers
+		}
+	}
+
+	@PublishedApi
+	internal fun bucket(codeSlot: Int, modifiers: Int) = buckets[codeSlot * MODIFIER_STATES + modifiers]
+
+	private fun reindex(binding: NamedKeyBinding, combination: KeyCombination) {
+		val entry = indexed[binding] ?: return
+		val slot = slot(combination)
+		if (slot == entry.slot) return
+		delete(entry.slot, binding)
+		insert(slot, binding)
+		entry.slot = slot
+	}
+
+	private fun insert(slot: Int, binding: NamedKeyBinding) {
+		buckets[slot] = buckets[slot]?.plus(binding) ?: arrayOf(binding)
+	}
+
+	private fun delete(slot: Int, binding: NamedKeyBinding) {
+		buckets[slot] = buckets[slot]?.filter { it !== binding }?.takeIf { it.isNotEmpty() }?.toTypedArray()
+	}
+
+	companion object {
+
+		private const val MODIFIER_STATES = 16
+
+		@PublishedApi
+		internal val NO_CODE_SLOT = KeyCode.entries.size
+
+		private val CODE_SLOTS = KeyCode.entries.size + 1
+
+		private const val SHIFT = 1
+		private const val CONTROL = 2
+		private const val ALT = 4
+		private const val META = 8
+
+		/**
+		 * @return false if [event] is for a modifier key. In that case any binding can match, so [forEachCandidate] shouldn't be used.
+		 */
+		@JvmStatic
+		fun isIndexed(event: KeyEvent) = !event.code.isModifierKey
+
+		@PublishedApi
+		internal fun modifierBits(event: KeyEvent): Int {
+			var bits = 0
+			if (event.isShiftDown) bits = bits or SHIFT
+			if (event.isControlDown) bits = bits or CONTROL
+			if (event.isAltDown) bits = bits or ALT
+			if (event.isMetaDown) bits = bits or META
+			if (event.isShortcutDown) bits = bits or modifierBit(Toolkit.getToolkit().platformShortcutKey)
+			return bits
+		}
+
+		private fun modifierBit(code: KeyCode) = when (code) {
+			KeyCode.SHIFT -> SHIFT
+			KeyCode.CONTROL -> CONTROL
+			KeyCode.ALT -> ALT
+			KeyCode.META -> META
+			else -> 0
+		}
+
+		private fun slot(combination: KeyCombination): Int {
+			val codeSlot = (combination as? KeyCodeCombination)?.code?.ordinal ?: NO_CODE_SLOT
+			var modifiers = 0
+			combination.modifierCodes.forEach { modifiers = modifiers or modifierBit(it) }
+			return codeSlot * MODIFIER_STATES + modifiers
+		}
+	}
+}
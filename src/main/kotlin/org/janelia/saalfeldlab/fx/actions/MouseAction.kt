@@ -3,6 +3,8 @@ package org.janelia.saalfeldlab.fx.actions
 import javafx.event.EventType
 import javafx.scene.input.MouseButton
 import javafx.scene.input.MouseEvent
+import org.janelia.saalfeldlab.fx.event.buttonsDownMask
+import org.janelia.saalfeldlab.fx.event.mask
 import java.util.function.Consumer
 
 /**
@@ -30,31 +32,30 @@ class MouseAction(eventType: EventType<MouseEvent>) : Action<MouseEvent>(eventTy
 	@JvmOverloads
 	fun verifyButtonTrigger(trigger: MouseButton, released: Boolean = false, exclusive: Boolean = false) {
 		/* If a trigger is required, check if it was correct, on either press or release */
-		var expected = ""
 		val desc = "$trigger was ${if (released) "Released" else "Pressed"}"
+		val triggerMask = trigger.mask
 		verify(desc) { mouseEvent ->
 			mouseEvent?.let {
 				if (released) {
-					it.wasButtonReleased(trigger).also { release ->
-						if (!release) expected = "expected $trigger to be released, but wasn't"
+					/* NONE is always considered down, so it is never released */
+					(trigger != MouseButton.NONE && it.button == trigger && it.buttonsDownMask() and triggerMask == 0).also { release ->
+						if (!release) logger.traceIfEnabled { "button trigger was not valid: expected $trigger to be released, but wasn't" }
 					}
 				} else {
-					(it.button == trigger).also { match -> if (!match) expected = "expected $trigger but button was ${it.button}" }
-				}.also { valid ->
-					if (!valid) logger.trace { "button trigger was not valid: $expected" }
+					(it.button == trigger).also { match ->
+						if (!match) logger.traceIfEnabled { "button trigger was not valid: expected $trigger but button was ${it.button}" }
+					}
 				}
 			} ?: true
 		}
 		/* If the mouse down buttons are exclusive, ensure no other buttons are pressed */
 		if (exclusive) {
+			val otherButtonsMask = triggerMask.inv()
 			verify(" Only $trigger Was Active") { mouseEvent ->
 				mouseEvent?.let { event ->
-					MouseButton.entries
-						.filter { it != trigger && it != MouseButton.NONE }
-						.map { !event.isButtonDown(it) }
-						.reduce { l, r -> l && r }.also {
-							if (!it) logger.trace { "expected only $trigger but other mouse buttons were down" }
-						}
+					(event.buttonsDownMask() and otherButtonsMask == 0).also {
+						if (!it) logger.traceIfEnabled { "expected only $trigger but other mouse buttons were down" }
+					}
 				} ?: true
 			}
 		}
@@ -68,46 +69,32 @@ class MouseAction(eventType: EventType<MouseEvent>) : Action<MouseEvent>(eventTy
 	 */
 	@JvmOverloads
 	fun verifyButtonsDown(vararg buttons: MouseButton, exclusive: Boolean = false) {
+		val buttonsMask = buttons.fold(0) { mask, button -> mask or button.mask }
 		/* Check if required keys are down */
 		if (buttons.isNotEmpty()) {
 			verify { mouseEvent ->
 				mouseEvent?.let { event ->
-					buttons.map { event.isButtonDown(it) }
-						.reduce { l, r -> l && r }.also {
-							if (!it) logger.trace { "expected buttons ${buttons.contentToString()} to be down, but some were not. " }
-						}
+					(event.buttonsDownMask() and buttonsMask == buttonsMask).also {
+						if (!it) logger.traceIfEnabled { "expected buttons ${buttons.contentToString()} to be down, but some were not. " }
+					}
 				} ?: true
 			}
 		}
 		/* If the mouse down buttons are exclusive, ensure no other buttons are pressed */
 		if (exclusive) {
+			val otherButtonsMask = buttonsMask.inv()
 			verify { mouseEvent ->
 				mouseEvent?.let { event ->
-					MouseButton.entries
-						.filter { it !in buttons }
-						.map { !event.isButtonDown(it) }
-						.reduce { l, r -> l && r }.also {
-							if (!it) logger.trace { "expected only buttons ${buttons.contentToString()} to be down, but other buttons were down also. " }
-						}
+					(event.buttonsDownMask() and otherButtonsMask == 0).also {
+						if (!it) logger.traceIfEnabled { "expected only buttons ${buttons.contentToString()} to be down, but other buttons were down also. " }
+					}
 				} ?: true
 			}
 		}
 	}
 
-	private fun MouseEvent.isButtonDown(mouseButton: MouseButton) = when (mouseButton) {
-		MouseButton.NONE -> true
-		MouseButton.PRIMARY -> isPrimaryButtonDown
-		MouseButton.MIDDLE -> isMiddleButtonDown
-		MouseButton.SECONDARY -> isSecondaryButtonDown
-		MouseButton.BACK -> isBackButtonDown
-		MouseButton.FORWARD -> isForwardButtonDown
-	}
-
-	private fun MouseEvent.wasButtonReleased(mouseButton: MouseButton) = button == mouseButton && !isButtonDown(mouseButton)
-
 	companion object {
 
-
 		/**
 		 * Create a [MouseAction] to trigger on [EventType] [T]
 		 *
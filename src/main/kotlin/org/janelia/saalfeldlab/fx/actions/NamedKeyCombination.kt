@@ -5,6 +5,7 @@ import javafx.beans.property.SimpleObjectProperty
 import javafx.scene.input.*
 import org.apache.commons.lang.builder.ToStringBuilder
 import org.apache.commons.lang.builder.ToStringStyle
+import org.janelia.saalfeldlab.fx.event.KeyMask
 import org.janelia.saalfeldlab.fx.event.KeyTracker
 import org.janelia.saalfeldlab.fx.extensions.nonnull
 import kotlin.collections.set
@@ -27,6 +28,25 @@ val KeyEvent.modifierCodes: Set<KeyCode>
 		if (isShortcutDown) Toolkit.getToolkit().platformShortcutKey else null
 	)
 
+private val MODIFIER_KEYS = KeyMask.of(KeyCode.SHIFT, KeyCode.CONTROL, KeyCode.ALT, KeyCode.META)
+
+/**
+ * Equivalent to `modifierCodes.containsAll(modifiers)`, without building [modifierCodes]
+ *
+ * @return true if every key in [modifiers] is a modifier that is down for this event
+ */
+internal fun KeyEvent.areModifiersDown(modifiers: KeyMask): Boolean {
+	if (modifiers.isEmpty()) return true
+	val shortcutKey = if (isShortcutDown) Toolkit.getToolkit().platformShortcutKey else null
+	var matched = 0
+	if (KeyCode.SHIFT in modifiers && (isShiftDown || shortcutKey == KeyCode.SHIFT)) matched++
+	if (KeyCode.CONTROL in modifiers && (isControlDown || shortcutKey == KeyCode.CONTROL)) matched++
+	if (KeyCode.ALT in modifiers && (isAltDown || shortcutKey == KeyCode.ALT)) matched++
+	if (KeyCode.META in modifiers && (isMetaDown || shortcutKey == KeyCode.META)) matched++
+	if (shortcutKey != null && shortcutKey !in MODIFIER_KEYS && shortcutKey in modifiers) matched++
+	return matched == modifiers.size
+}
+
 interface NamedKeyBinding {
 	val keyBindingName : String
 	val primaryCombinationProperty: SimpleObjectProperty<KeyCombination>
@@ -40,12 +60,24 @@ interface NamedKeyBinding {
 			return codes.toSet()
 		}
 
+	/**
+	 * [keyCodes] as a [KeyMask]
+	 */
+	val keyMask: KeyMask
+		get() = KeyMask.of(keyCodes)
+
+	/**
+	 * The modifier keys of [primaryCombination] as a [KeyMask]
+	 */
+	val modifierMask: KeyMask
+		get() = KeyMask.of(primaryCombinationProperty.get().modifierCodes)
+
 	fun matches(event : KeyEvent, keyTracker : KeyTracker?, keysExclusive: Boolean = true) : Boolean {
 		return if (keysExclusive) {
-			keyTracker?.areOnlyTheseKeysDown(*keyCodes.toTypedArray()) ?: primaryCombination.match(event)
+			keyTracker?.areOnlyTheseKeysDown(keyMask) ?: primaryCombination.match(event)
 		} else {
-			val codesMatchIfCodeCombo = (primaryCombinationProperty.get() as? KeyCodeCombination)?.code?.let { it == event.code } ?: true
-			codesMatchIfCodeCombo && event.modifierCodes.containsAll(primaryCombinationProperty.get().modifierCodes)
+			val code = (primaryCombinationProperty.get() as? KeyCodeCombination)?.code
+			(code == null || code == event.code) && event.areModifiersDown(modifierMask)
 		}
 	}
 
@@ -57,9 +89,43 @@ open class NamedKeyCombination(override val keyBindingName: String, primaryCombi
 	override val primaryCombinationProperty = SimpleObjectProperty(primaryCombination)
 	override var primaryCombination: KeyCombination by primaryCombinationProperty.nonnull()
 
+	@Volatile
+	private var cachedKeys: CachedKeys? = null
+
+	init {
+		primaryCombinationProperty.addListener { _, _, _ -> cachedKeys = null }
+	}
+
+	private val keys: CachedKeys
+		get() = cachedKeys ?: CachedKeys(primaryCombinationProperty.get()).also { cachedKeys = it }
+
+	/**
+	 * Cached, and only recomputed when [primaryCombinationProperty] changes
+	 */
+	override val keyCodes: Set<KeyCode>
+		get() = keys.keyCodes
+
+	/**
+	 * Cached, and only recomputed when [primaryCombinationProperty] changes
+	 */
+	override val keyMask: KeyMask
+		get() = keys.keyMask
+
+	/**
+	 * Cached, and only recomputed when [primaryCombinationProperty] changes
+	 */
+	override val modifierMask: KeyMask
+		get() = keys.modifierMask
+
 	override val deepCopy: NamedKeyCombination
 		get() = NamedKeyCombination(keyBindingName, primaryCombination)
 
+	private class CachedKeys(combination: KeyCombination) {
+		val modifierMask = KeyMask.of(combination.modifierCodes)
+		val keyCodes: Set<KeyCode> = (combination as? KeyCodeCombination)?.code?.let { combination.modifierCodes + it } ?: combination.modifierCodes
+		val keyMask = KeyMask.of(keyCodes)
+	}
+
 	override fun equals(other: Any?): Boolean {
 		if (other is NamedKeyCombination)
 			return other.keyBindingName === keyBindingName
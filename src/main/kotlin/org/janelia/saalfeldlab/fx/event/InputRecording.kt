@@ -0,0 +1,426 @@
+package org.janelia.saalfeldlab.fx.event
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import javafx.event.Event
+import javafx.event.EventTarget
+import javafx.event.EventType
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseDragEvent
+import javafx.scene.input.MouseEvent
+import javafx.scene.input.ScrollEvent
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import org.janelia.saalfeldlab.fx.actions.ActionSet
+import org.janelia.saalfeldlab.fx.midi.FxMidiEvent
+import org.janelia.saalfeldlab.fx.midi.MidiButtonEvent
+import org.janelia.saalfeldlab.fx.midi.MidiFaderEvent
+import org.janelia.saalfeldlab.fx.midi.MidiPotentiometerEvent
+import org.janelia.saalfeldlab.fx.midi.MidiToggleEvent
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import kotlin.coroutines.coroutineContext
+import kotlin.time.Duration.Companion.nanoseconds
+
+/**
+ * [ActionSet] that records the [KeyEvent]s, [MouseEvent]s, [ScrollEvent]s and [FxMidiEvent]s that reach the [EventTarget]
+ * it is installed in, to a compact binary log with nanosecond timestamps. Replay the log with [InputReplayer].
+ *
+ * The recording actions are filters that neither consume the events nor check any keys, so installing the recorder doesn't
+ * change how other [ActionSet]s see the events. [MouseDragEvent]s are not recorded; they are generated by JavaFX
+ * during a full press-drag-release gesture, which replaying the underlying [MouseEvent]s into a scene triggers again.
+ *
+ * ```kotlin
+ * val recorder = InputRecorder(FileOutputStream("session.sfxi"))
+ * node.installActionSet(recorder)
+ * /* ... interact ... */
+ * node.removeActionSet(recorder)
+ * recorder.close()
+ * ```
+ *
+ * The log stores [KeyCode]s and [MouseButton]s by ordinal, so it should be replayed with the same JavaFX version it
+ * was recorded with. Not thread safe; events are expected on the JavaFX Application Thread.
+ *
+ * @param output to write the log to. Buffered by the recorder, and closed by [close].
+ */
+class InputRecorder(output: OutputStream) : ActionSet("Input Recorder"), Closeable {
+
+	private val out = DataOutputStream(BufferedOutputStream(output))
+	private val eventTypeIds = HashMap<EventType<*>, Int>()
+	private var start = -1L
+
+	/**
+	 * Number of events recorded so far
+	 */
+	var recordedCount = 0
+		private set
+
+	init {
+		out.writeInt(InputLog.MAGIC)
+		out.writeShort(InputLog.VERSION)
+		recordAll(KeyEvent.ANY)
+		recordAll(MouseEvent.ANY)
+		recordAll(ScrollEvent.ANY)
+		recordAll(FxMidiEvent.ANY)
+	}
+
+	private fun <E : Event> recordAll(eventType: EventType<E>) = action(eventType) {
+		name = "record-${eventType.name}"
+		ignoreKeys()
+		filter = true
+		consume = false
+		verifyEventNotNull()
+		onAction { record(it!!) }
+	}
+
+	private fun record(event: Event) {
+		val kind = when (event) {
+			is MouseDragEvent -> return
+			is KeyEvent -> InputLog.KEY
+			is MouseEvent -> InputLog.MOUSE
+			is ScrollEvent -> InputLog.SCROLL
+			is FxMidiEvent -> InputLog.MIDI
+			else -> return
+		}
+		val now = System.nanoTime()
+		if (start < 0) start = now
+		try {
+			val typeId = eventTypeId(kind, event.eventType)
+			out.writeByte(kind)
+			out.writeLong(now - start)
+			out.writeShort(typeId)
+			when (event) {
+				is KeyEvent -> writeKey(event)
+				is MouseEvent -> writeMouse(event)
+				is ScrollEvent -> writeScroll(event)
+				is FxMidiEvent -> writeMidi(event)
+			}
+			recordedCount++
+		} catch (e: IOException) {
+			LOG.error(e) { "Unable to record $event" }
+		}
+	}
+
+	/**
+	 * @return the id of [eventType], writing its definition to the log the first time it is seen
+	 */
+	private fun eventTypeId(kind: Int, eventType: EventType<*>) = eventTypeIds.getOrPut(eventType) {
+		eventTypeIds.size.also { id ->
+			out.writeByte(InputLog.EVENT_TYPE)
+			out.writeShort(id)
+			out.writeByte(kind)
+			out.writeUTF(eventType.name)
+		}
+	}
+
+	private fun writeKey(event: KeyEvent) = with(event) {
+		out.writeShort(code.ordinal)
+		out.writeUTF(character)
+		out.writeUTF(text)
+		out.writeByte(InputLog.flags(isShiftDown, isControlDown, isAltDown, isMetaDown))
+	}
+
+	private fun writeMouse(event: MouseEvent) = with(event) {
+		/* scene coordinates; the local coordinates are computed again for the replay target */
+		out.writeDouble(sceneX)
+		out.writeDouble(sceneY)
+		out.writeDouble(screenX)
+		out.writeDouble(screenY)
+		out.writeByte(button?.ordinal ?: -1)
+		out.writeInt(clickCount)
+		out.writeShort(
+			InputLog.flags(
+				isShiftDown, isControlDown, isAltDown, isMetaDown,
+				isPrimaryButtonDown, isMiddleButtonDown, isSecondaryButtonDown, isBackButtonDown, isForwardButtonDown,
+				isSynthesized, isPopupTrigger, isStillSincePress
+			)
+		)
+	}
+
+	private fun writeScroll(event: ScrollEvent) = with(event) {
+		/* scene coordinates; the local coordinates are computed again for the replay target */
+		out.writeDouble(sceneX)
+		out.writeDouble(sceneY)
+		out.writeDouble(screenX)
+		out.writeDouble(screenY)
+		out.writeDouble(deltaX)
+		out.writeDouble(deltaY)
+		out.writeDouble(totalDeltaX)
+		out.writeDouble(totalDeltaY)
+		out.writeDouble(multiplierX)
+		out.writeDouble(multiplierY)
+		out.writeByte(textDeltaXUnits.ordinal)
+		out.writeDouble(textDeltaX)
+		out.writeByte(textDeltaYUnits.ordinal)
+		out.writeDouble(textDeltaY)
+		out.writeInt(touchCount)
+		out.writeByte(InputLog.flags(isShiftDown, isControlDown, isAltDown, isMetaDown, isDirect, isInertia))
+	}
+
+	private fun writeMidi(event: FxMidiEvent) = with(event) {
+		out.writeInt(handle)
+		when (value) {
+			is Int, is Short, is Byte -> {
+				out.writeByte(InputLog.INT_VALUE)
+				out.writeInt(value.toInt())
+			}
+			else -> {
+				out.writeByte(InputLog.DOUBLE_VALUE)
+				out.writeDouble(value.toDouble())
+			}
+		}
+	}
+
+	/**
+	 * Write any buffered events to the output
+	 */
+	fun flush() = out.flush()
+
+	/**
+	 * Flush and close the output. Remove this recorder from its [EventTarget]s first; any events recorded after closing are dropped.
+	 */
+	override fun close() = out.close()
+
+	companion object {
+		private val LOG = KotlinLogging.logger { }
+	}
+}
+
+/**
+ * Replays a log written by [InputRecorder].
+ *
+ * Events are fired at the [EventTarget] passed to [replay], which passes them through the same [ActionSet]s as the
+ * original input. Each replay fires new copies of the recorded events, so a log can be replayed any number of times.
+ *
+ * For headless replay (e.g. benchmarks in CI) run JavaFX with Monocle:
+ * `-Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw`
+ *
+ * @param input to read the log from. Read completely, and closed, by the constructor.
+ * @throws IOException if [input] is not a valid log
+ */
+class InputReplayer(input: InputStream) {
+
+	/**
+	 * A recorded [event], at [nanos] after the first recorded event
+	 */
+	class RecordedEvent(val nanos: Long, val event: Event)
+
+	/**
+	 * The recorded events, in the order they were recorded
+	 */
+	val events: List<RecordedEvent> = DataInputStream(BufferedInputStream(input)).use { read(it) }
+
+	/**
+	 * Fire all recorded events at [target], one after the other, on the calling thread. This is the fastest way to
+	 * replay; [target] and its [ActionSet]s must support being called from the calling thread (usually the JavaFX
+	 * Application Thread).
+	 *
+	 * @return the number of events fired
+	 */
+	fun replayImmediately(target: EventTarget): Int {
+		events.forEach { Event.fireEvent(target, it.copy(target)) }
+		return events.size
+	}
+
+	/**
+	 * Fire all recorded events at [target] on the JavaFX Application Thread.
+	 *
+	 * @param recordedSpeed if true, each event is fired at (approximately) the same time after the start of the replay
+	 * as it was after the start of the recording. If false, events are fired as fast as possible.
+	 * @return the number of events fired
+	 */
+	suspend fun replay(target: EventTarget, recordedSpeed: Boolean = true): Int {
+		val start = System.nanoTime()
+		for (recorded in events) {
+			coroutineContext.ensureActive()
+			if (recordedSpeed) {
+				val wait = recorded.nanos - (System.nanoTime() - start)
+				if (wait > 0) delay(wait.nanoseconds)
+			}
+			Event.fireEvent(target, recorded.copy(target))
+		}
+		return events.size
+	}
+
+	/**
+	 * [replay] on the JavaFX Application Thread
+	 *
+	 * @see replay
+	 */
+	@JvmOverloads
+	fun replayOnFxThread(target: EventTarget, recordedSpeed: Boolean = true): Deferred<Int> = InvokeOnJavaFXApplicationThread { replay(target, recordedSpeed) }
+
+	private fun RecordedEvent.copy(target: EventTarget) = event.copyFor(event.source, target)
+
+	private fun read(input: DataInputStream): List<RecordedEvent> {
+		if (input.readInt() != InputLog.MAGIC) throw IOException("Not an input recording")
+		val version = input.readShort().toInt()
+		if (version != InputLog.VERSION) throw IOException("Unsupported input recording version $version")
+
+		val eventTypes = HashMap<Int, EventType<*>>()
+		val events = mutableListOf<RecordedEvent>()
+		while (true) {
+			val kind = try {
+				input.readUnsignedByte()
+			} catch (e: EOFException) {
+				return events
+			}
+			if (kind == InputLog.EVENT_TYPE) {
+				val id = input.readShort().toInt()
+				val eventKind = input.readUnsignedByte()
+				val name = input.readUTF()
+				eventTypes[id] = InputLog.eventType(eventKind, name) ?: throw IOException("Unknown event type $name")
+				continue
+			}
+			val nanos = input.readLong()
+			val typeId = input.readShort().toInt()
+			val eventType = eventTypes[typeId] ?: throw IOException("Undefined event type id $typeId")
+			val event = when (kind) {
+				InputLog.KEY -> readKey(input, eventType)
+				InputLog.MOUSE -> readMouse(input, eventType)
+				InputLog.SCROLL -> readScroll(input, eventType)
+				InputLog.MIDI -> readMidi(input, eventType)
+				else -> throw IOException("Unknown record kind $kind")
+			}
+			events += RecordedEvent(nanos, event)
+		}
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	private fun readKey(input: DataInputStream, eventType: EventType<*>): KeyEvent {
+		val code = KeyCode.entries[input.readShort().toInt()]
+		val character = input.readUTF()
+		val text = input.readUTF()
+		val flags = input.readUnsignedByte()
+		return KeyEvent(
+			eventType as EventType<KeyEvent>, character, text, code,
+			InputLog.isSet(flags, 0), InputLog.isSet(flags, 1), InputLog.isSet(flags, 2), InputLog.isSet(flags, 3)
+		)
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	private fun readMouse(input: DataInputStream, eventType: EventType<*>): MouseEvent {
+		val sceneX = input.readDouble()
+		val sceneY = input.readDouble()
+		val screenX = input.readDouble()
+		val screenY = input.readDouble()
+		val button = input.readByte().toInt().let { if (it < 0) null else MouseButton.entries[it] }
+		val clickCount = input.readInt()
+		val flags = input.readUnsignedShort()
+		fun flag(bit: Int) = InputLog.isSet(flags, bit)
+		return MouseEvent(
+			eventType as EventType<MouseEvent>,
+			sceneX, sceneY, screenX, screenY,
+			button, clickCount,
+			flag(0), flag(1), flag(2), flag(3),
+			flag(4), flag(5), flag(6), flag(7), flag(8),
+			flag(9), flag(10), flag(11),
+			null
+		)
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	private fun readScroll(input: DataInputStream, eventType: EventType<*>): ScrollEvent {
+		val sceneX = input.readDouble()
+		val sceneY = input.readDouble()
+		val screenX = input.readDouble()
+		val screenY = input.readDouble()
+		val deltaX = input.readDouble()
+		val deltaY = input.readDouble()
+		val totalDeltaX = input.readDouble()
+		val totalDeltaY = input.readDouble()
+		val multiplierX = input.readDouble()
+		val multiplierY = input.readDouble()
+		val textDeltaXUnits = ScrollEvent.HorizontalTextScrollUnits.entries[input.readUnsignedByte()]
+		val textDeltaX = input.readDouble()
+		val textDeltaYUnits = ScrollEvent.VerticalTextScrollUnits.entries[input.readUnsignedByte()]
+		val textDeltaY = input.readDouble()
+		val touchCount = input.readInt()
+		val flags = input.readUnsignedByte()
+		fun flag(bit: Int) = InputLog.isSet(flags, bit)
+		return ScrollEvent(
+			eventType as EventType<ScrollEvent>,
+			sceneX, sceneY, screenX, screenY,
+			flag(0), flag(1), flag(2), flag(3),
+			flag(4), flag(5),
+			deltaX, deltaY, totalDeltaX, totalDeltaY,
+			multiplierX, multiplierY,
+			textDeltaXUnits, textDeltaX, textDeltaYUnits, textDeltaY,
+			touchCount, null
+		)
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	private fun readMidi(input: DataInputStream, eventType: EventType<*>): FxMidiEvent {
+		val handle = input.readInt()
+		val value: Number = when (val valueType = input.readUnsignedByte()) {
+			InputLog.INT_VALUE -> input.readInt()
+			InputLog.DOUBLE_VALUE -> input.readDouble()
+			else -> throw IOException("Unknown MIDI value type $valueType")
+		}
+		return when (eventType) {
+			MidiToggleEvent.BUTTON_TOGGLE -> MidiToggleEvent(handle, value.toInt(), eventType as EventType<MidiToggleEvent>)
+			MidiFaderEvent.FADER -> MidiFaderEvent(handle, value, eventType as EventType<MidiFaderEvent>)
+			MidiButtonEvent.BUTTON, MidiButtonEvent.BUTTON_PRESSED, MidiButtonEvent.BUTTON_RELEASED -> MidiButtonEvent(handle, value.toInt(), eventType as EventType<MidiButtonEvent>)
+			else -> MidiPotentiometerEvent(handle, value, eventType as EventType<MidiPotentiometerEvent>)
+		}
+	}
+}
+
+/**
+ * The binary format shared by [InputRecorder] and [InputReplayer].
+ *
+ * After the header ([MAGIC], [VERSION]) the log is a sequence of records, each starting with a kind byte:
+ *  - [EVENT_TYPE]: defines an id for an [EventType], before its first use
+ *  - [KEY], [MOUSE], [SCROLL], [MIDI]: an event; nanoseconds since the first event, the event type id, and the event fields
+ */
+private object InputLog {
+
+	const val MAGIC = 0x53465849 // SFXI
+	const val VERSION = 2
+
+	const val EVENT_TYPE = 0
+	const val KEY = 1
+	const val MOUSE = 2
+	const val SCROLL = 3
+	const val MIDI = 4
+
+	const val INT_VALUE = 0
+	const val DOUBLE_VALUE = 1
+
+	private val EVENT_TYPES: Map<Int, Map<String, EventType<*>>> = mapOf(
+		KEY to listOf(KeyEvent.ANY, KeyEvent.KEY_PRESSED, KeyEvent.KEY_RELEASED, KeyEvent.KEY_TYPED),
+		MOUSE to listOf(
+			MouseEvent.ANY, MouseEvent.MOUSE_PRESSED, MouseEvent.MOUSE_RELEASED, MouseEvent.MOUSE_CLICKED,
+			MouseEvent.MOUSE_ENTERED_TARGET, MouseEvent.MOUSE_ENTERED, MouseEvent.MOUSE_EXITED_TARGET, MouseEvent.MOUSE_EXITED,
+			MouseEvent.MOUSE_MOVED, MouseEvent.MOUSE_DRAGGED, MouseEvent.DRAG_DETECTED
+		),
+		SCROLL to listOf(ScrollEvent.ANY, ScrollEvent.SCROLL, ScrollEvent.SCROLL_STARTED, ScrollEvent.SCROLL_FINISHED),
+		MIDI to listOf(
+			FxMidiEvent.ANY,
+			MidiPotentiometerEvent.POTENTIOMETER_ABSOLUTE, MidiPotentiometerEvent.POTENTIOMETER_RELATIVE,
+			MidiButtonEvent.BUTTON, MidiButtonEvent.BUTTON_PRESSED, MidiButtonEvent.BUTTON_RELEASED,
+			MidiToggleEvent.BUTTON_TOGGLE, MidiFaderEvent.FADER
+		)
+	).mapValues { (_, eventTypes) -> eventTypes.associateBy { it.name } }
+
+	fun eventType(kind: Int, name: String) = EVENT_TYPES[kind]?.get(name)
+
+	fun flags(vararg flags: Boolean): Int {
+		var bits = 0
+		flags.forEachIndexed { bit, set -> if (set) bits = bits or (1 shl bit) }
+		return bits
+	}
+
+	fun isSet(flags: Int, bit: Int) = flags and (1 shl bit) != 0
+}
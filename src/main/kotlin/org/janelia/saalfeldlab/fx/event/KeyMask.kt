@@ -0,0 +1,93 @@
+package org.janelia.saalfeldlab.fx.event
+
+import javafx.scene.input.KeyCode
+
+/**
+ * Immutable set of [KeyCode]s, stored as a fixed-width bitset indexed by [KeyCode.ordinal].
+ *
+ * Membership, subset and equality tests compare a handful of words, without locking or allocation.
+ * Used by [KeyTracker] to publish its active keys, and precomputed by key-gated actions for the keys they require.
+ */
+class KeyMask private constructor(private val words: LongArray) {
+
+	/**
+	 * Number of [KeyCode]s in this mask
+	 */
+	val size: Int = words.sumOf { it.countOneBits() }
+
+	fun isEmpty() = size == 0
+
+	operator fun contains(code: KeyCode) = words[code.ordinal ushr 6] and (1L shl code.ordinal) != 0L
+
+	/**
+	 * @return true if every [KeyCode] in [other] is in this mask
+	 */
+	fun containsAll(other: KeyMask): Boolean {
+		for (i in words.indices) {
+			if (other.words[i] and words[i].inv() != 0L) return false
+		}
+		return true
+	}
+
+	/**
+	 * @return true if every [KeyCode] in [other], except [ignored], is in this mask
+	 */
+	fun containsAllExcept(other: KeyMask, ignored: KeyCode): Boolean {
+		val ignoredWord = ignored.ordinal ushr 6
+		val ignoredBit = 1L shl ignored.ordinal
+		for (i in words.indices) {
+			var required = other.words[i]
+			if (i == ignoredWord) required = required and ignoredBit.inv()
+			if (required and words[i].inv() != 0L) return false
+		}
+		return true
+	}
+
+	/**
+	 * @return a mask with [code] added, or this mask if it already contains [code]
+	 */
+	fun with(code: KeyCode): KeyMask {
+		if (code in this) return this
+		return KeyMask(words.copyOf().also { it[code.ordinal ushr 6] = it[code.ordinal ushr 6] or (1L shl code.ordinal) })
+	}
+
+	/**
+	 * @return a mask with [code] removed, or this mask if it doesn't contain [code]
+	 */
+	fun without(code: KeyCode): KeyMask {
+		if (code !in this) return this
+		return KeyMask(words.copyOf().also { it[code.ordinal ushr 6] = it[code.ordinal ushr 6] and (1L shl code.ordinal).inv() })
+	}
+
+	/**
+	 * @return the [KeyCode]s in this mask, in [KeyCode.ordinal] order
+	 */
+	fun toKeyCodes(): List<KeyCode> = KEY_CODES.filter { it in this }
+
+	override fun equals(other: Any?) = other is KeyMask && words.contentEquals(other.words)
+
+	override fun hashCode() = words.contentHashCode()
+
+	override fun toString() = toKeyCodes().toString()
+
+	companion object {
+
+		private val KEY_CODES = KeyCode.entries
+
+		private val WORDS = (KEY_CODES.size + Long.SIZE_BITS - 1) / Long.SIZE_BITS
+
+		@JvmField
+		val EMPTY = KeyMask(LongArray(WORDS))
+
+		@JvmStatic
+		fun of(vararg codes: KeyCode) = of(codes.asList())
+
+		@JvmStatic
+		fun of(codes: Collection<KeyCode>): KeyMask {
+			if (codes.isEmpty()) return EMPTY
+			val words = LongArray(WORDS)
+			codes.forEach { words[it.ordinal ushr 6] = words[it.ordinal ushr 6] or (1L shl it.ordinal) }
+			return KeyMask(words)
+		}
+	}
+}
@@ -37,10 +37,23 @@ import org.janelia.saalfeldlab.fx.actions.ActionSet
 import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
 import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.removeActionSet
 import org.janelia.saalfeldlab.fx.actions.NamedKeyBinding
+import java.util.concurrent.atomic.AtomicReference
 
+/**
+ * Tracks the keys currently held down.
+ *
+ * The active keys are an immutable [KeyMask], replaced atomically on every change, together with the order the keys
+ * were pressed in. Queries read the current mask once, so they don't lock, and the [KeyMask] overloads don't allocate.
+ */
 class KeyTracker {
 
-	private val activeKeys = mutableSetOf<KeyCode>()
+	private val activeKeys = AtomicReference(ActiveKeys.NONE)
+
+	/**
+	 * The currently active keys
+	 */
+	val activeKeyMask: KeyMask
+		get() = activeKeys.get().mask
 
 	private val actions by lazy {
 		ActionSet("Key Tracker", { this }) {
@@ -65,7 +78,7 @@ class KeyTracker {
 
 	val clearOnUnfocused = ChangeListener<Boolean> { _, _, isFocused ->
 		if (isFocused) {
-			activeKeys.clear()
+			activeKeys.set(ActiveKeys.NONE)
 		}
 	}
 
@@ -79,25 +92,78 @@ class KeyTracker {
 		window.focusedProperty().removeListener(clearOnUnfocused)
 	}
 
-	fun areOnlyTheseKeysDown(vararg codes: KeyCode) = activeKeys.synchronized { mutableSetOf(*codes) == this }
+	fun areOnlyTheseKeysDown(vararg codes: KeyCode) = areOnlyTheseKeysDown(codes.asList())
+
+	fun areKeysDown(namedKeyBinding: NamedKeyBinding) = areKeysDown(namedKeyBinding.keyMask)
+
+	fun areKeysDown(vararg codes: KeyCode) = areKeysDown(codes.asList())
+
+	/**
+	 * @return true if [codes] are exactly the active keys. Doesn't copy [codes], unlike the `vararg` overload
+	 */
+	fun areOnlyTheseKeysDown(codes: List<KeyCode>): Boolean {
+		val active = activeKeyMask
+		var distinct = 0
+		for (i in codes.indices) {
+			val code = codes[i]
+			if (code !in active) return false
+			if (codes.indexOf(code) == i) distinct++
+		}
+		return distinct == active.size
+	}
+
+	/**
+	 * @return true if all of [codes] are active. Doesn't copy [codes], unlike the `vararg` overload
+	 */
+	fun areKeysDown(codes: List<KeyCode>): Boolean {
+		val active = activeKeyMask
+		for (i in codes.indices) {
+			if (codes[i] !in active) return false
+		}
+		return true
+	}
+
+	/**
+	 * @return true if [keys] are exactly the active keys
+	 */
+	fun areOnlyTheseKeysDown(keys: KeyMask) = activeKeyMask == keys
+
+	/**
+	 * @return true if all of [keys] are active
+	 */
+	fun areKeysDown(keys: KeyMask) = activeKeyMask.containsAll(keys)
+
+	/**
+	 * @return true if all of [keys] are active, except [ignored] which may or may not be active
+	 */
+	fun areKeysDownExcept(keys: KeyMask, ignored: KeyCode) = activeKeyMask.containsAllExcept(keys, ignored)
+
+	fun isKeyDown(code: KeyCode) = code in activeKeyMask
+
+	fun activeKeyCount() = activeKeyMask.size
 
-	fun areKeysDown(namedKeyBinding: NamedKeyBinding) = activeKeys.synchronized { containsAll(listOf(*namedKeyBinding.keyCodes.toTypedArray())) }
+	fun noKeysActive() = activeKeyMask.isEmpty()
 
-	fun areKeysDown(vararg codes: KeyCode) = activeKeys.synchronized { containsAll(listOf(*codes)) }
+	/**
+	 * @return the active keys, in the order they were pressed
+	 */
+	fun getActiveKeyCodes(includeModifiers: Boolean) = activeKeys.get().pressOrder.filter { includeModifiers || !it.isModifierKey }
 
-	fun activeKeyCount() = activeKeys.synchronized { size }
+	fun addKey(key: KeyCode) = activeKeys.getAndUpdate { it.with(key) }.let { key !in it.mask }
 
-	fun noKeysActive() = activeKeyCount() == 0
+	fun removeKey(key: KeyCode) = activeKeys.getAndUpdate { it.without(key) }.let { key in it.mask }
 
-	fun getActiveKeyCodes(includeModifiers: Boolean) = activeKeys.synchronized { filter { includeModifiers || !it.isModifierKey } }
+	/**
+	 * The [mask] for the queries, and the same keys in the order they were pressed
+	 */
+	private class ActiveKeys(val mask: KeyMask, val pressOrder: List<KeyCode>) {
 
-	fun addKey(key: KeyCode) = activeKeys.synchronized { add(key) }
+		fun with(key: KeyCode) = if (key in mask) this else ActiveKeys(mask.with(key), pressOrder + key)
 
-	fun removeKey(key: KeyCode) = activeKeys.synchronized { remove(key) }
+		fun without(key: KeyCode) = if (key !in mask) this else ActiveKeys(mask.without(key), pressOrder - key)
 
-	private fun <R> MutableSet<KeyCode>.synchronized(run: MutableSet<KeyCode>.() -> R): R {
-		synchronized(this) {
-			return run(this)
+		companion object {
+			val NONE = ActiveKeys(KeyMask.EMPTY, emptyList())
 		}
 	}
 
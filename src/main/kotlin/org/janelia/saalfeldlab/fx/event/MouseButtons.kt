@@ -0,0 +1,24 @@
+package org.janelia.saalfeldlab.fx.event
+
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent
+
+/**
+ * Bit of this button in [buttonsDownMask], `1 shl` [MouseButton.ordinal]. [MouseButton.NONE] has no bit, so it is always
+ * considered down.
+ */
+internal val MouseButton.mask: Int
+	get() = if (this == MouseButton.NONE) 0 else 1 shl ordinal
+
+/**
+ * @return the buttons that are down for this event, as a mask of [MouseButton.mask] bits
+ */
+internal fun MouseEvent.buttonsDownMask(): Int {
+	var mask = 0
+	if (isPrimaryButtonDown) mask = mask or MouseButton.PRIMARY.mask
+	if (isMiddleButtonDown) mask = mask or MouseButton.MIDDLE.mask
+	if (isSecondaryButtonDown) mask = mask or MouseButton.SECONDARY.mask
+	if (isBackButtonDown) mask = mask or MouseButton.BACK.mask
+	if (isForwardButtonDown) mask = mask or MouseButton.FORWARD.mask
+	return mask
+}
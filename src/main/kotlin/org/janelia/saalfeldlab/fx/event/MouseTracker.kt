@@ -31,10 +31,28 @@ package org.janelia.saalfeldlab.fx.event
 import io.github.oshai.kotlinlogging.KotlinLogging
 import javafx.beans.property.SimpleDoubleProperty
 import javafx.event.EventHandler
+import javafx.scene.input.MouseButton
 import javafx.scene.input.MouseEvent
+import org.janelia.saalfeldlab.fx.actions.traceIfEnabled
 import org.janelia.saalfeldlab.fx.extensions.nonnull
 
-class MouseTracker : EventHandler<MouseEvent> {
+/**
+ * Tracks the position of the mouse, and whether it is dragging.
+ *
+ * Additionally, the last [historySize] positions are kept in a ring buffer of primitive arrays, together with the time they
+ * were recorded at and the buttons that were down, as mask of `1 shl` [MouseButton.ordinal] bits. The history can be queried
+ * by age (`0` is the latest sample), resampled at arbitrary times with [xAt] and [yAt], and used to estimate the velocity
+ * and acceleration of the pointer. None of these allocate, so they can be used for each mouse event.
+ *
+ * Not thread safe; use it on the JavaFX Application Thread.
+ *
+ * @param historySize the number of samples to keep
+ */
+class MouseTracker @JvmOverloads constructor(val historySize: Int = DEFAULT_HISTORY_SIZE) : EventHandler<MouseEvent> {
+
+	init {
+		require(historySize >= 2) { "historySize must be at least 2 but was $historySize" }
+	}
 
 	var isDragging: Boolean = false
 		private set
@@ -47,18 +65,206 @@ class MouseTracker : EventHandler<MouseEvent> {
 	var y by yProperty.nonnull()
 		private set
 
+	private val nanoTimes = LongArray(historySize)
+	private val xs = DoubleArray(historySize)
+	private val ys = DoubleArray(historySize)
+	private val buttons = IntArray(historySize)
+
+	/* index the next sample is written to */
+	private var next = 0
+
+	/**
+	 * The number of samples in the history, at most [historySize]
+	 */
+	var sampleCount = 0
+		private set
+
 	override fun handle(event: MouseEvent) {
 		if (event.eventType == MouseEvent.MOUSE_PRESSED)
 			this.isDragging = false
 		else if (event.eventType == MouseEvent.DRAG_DETECTED)
 			this.isDragging = true
-		LOG.trace { "Updated x $x -> ${event.x} and y $y -> ${event.y}" }
+		LOG.traceIfEnabled { "Updated x $x -> ${event.x} and y $y -> ${event.y}" }
 		x = event.x
 		y = event.y
+		record(System.nanoTime(), event.x, event.y, event.buttonsDownMask())
+	}
+
+	/**
+	 * Add a sample to the history. [handle] records a sample for each event at [System.nanoTime]. Samples are expected in
+	 * chronological order.
+	 *
+	 * @param nanoTime the time of the sample, as [System.nanoTime]
+	 * @param buttons the buttons down, as mask of `1 shl` [MouseButton.ordinal] bits
+	 */
+	fun record(nanoTime: Long, x: Double, y: Double, buttons: Int) {
+		nanoTimes[next] = nanoTime
+		xs[next] = x
+		ys[next] = y
+		this.buttons[next] = buttons
+		next = (next + 1) % historySize
+		if (sampleCount < historySize) sampleCount++
+	}
+
+	/**
+	 * Remove all samples from the history. Does not change [x] and [y].
+	 */
+	fun clearHistory() {
+		next = 0
+		sampleCount = 0
+	}
+
+	/**
+	 * @param age of the sample; `0` for the latest, up to [sampleCount] - 1
+	 */
+	fun nanoTime(age: Int) = nanoTimes[index(age)]
+
+	/**
+	 * @param age of the sample; `0` for the latest, up to [sampleCount] - 1
+	 */
+	fun x(age: Int) = xs[index(age)]
+
+	/**
+	 * @param age of the sample; `0` for the latest, up to [sampleCount] - 1
+	 */
+	fun y(age: Int) = ys[index(age)]
+
+	/**
+	 * @param age of the sample; `0` for the latest, up to [sampleCount] - 1
+	 * @return the buttons down for the sample, as mask of `1 shl` [MouseButton.ordinal] bits
+	 */
+	fun buttons(age: Int) = buttons[index(age)]
+
+	/**
+	 * @param age of the sample; `0` for the latest, up to [sampleCount] - 1
+	 * @return true if [button] was down for the sample
+	 */
+	fun isButtonDown(age: Int, button: MouseButton) = button != MouseButton.NONE && buttons(age) and button.mask != 0
+
+	/**
+	 * @return the x position at [nanoTime], linearly interpolated between the samples around it. Clamped to the oldest and
+	 * latest sample, [x] if there are no samples.
+	 */
+	fun xAt(nanoTime: Long) = interpolate(xs, nanoTime, x)
+
+	/**
+	 * @return the y position at [nanoTime], linearly interpolated between the samples around it. Clamped to the oldest and
+	 * latest sample, [y] if there are no samples.
+	 */
+	fun yAt(nanoTime: Long) = interpolate(ys, nanoTime, y)
+
+	/**
+	 * Resample the history at `targetXs.size` evenly spaced times from [fromNanoTime] to [toNanoTime] (both inclusive),
+	 * e.g. to smooth a brush stroke. See [xAt] and [yAt].
+	 *
+	 * @param targetXs receives the x positions
+	 * @param targetYs receives the y positions; at least as long as [targetXs]
+	 */
+	fun resample(fromNanoTime: Long, toNanoTime: Long, targetXs: DoubleArray, targetYs: DoubleArray) {
+		require(targetYs.size >= targetXs.size) { "targetYs is shorter than targetXs" }
+		val n = targetXs.size
+		for (i in 0 until n) {
+			val nanoTime = if (n == 1) toNanoTime else fromNanoTime + ((toNanoTime - fromNanoTime) * i.toDouble() / (n - 1)).toLong()
+			targetXs[i] = xAt(nanoTime)
+			targetYs[i] = yAt(nanoTime)
+		}
+	}
+
+	/**
+	 * @param windowNanos the time span to estimate the velocity over, up to the latest sample. Shortened to the time span
+	 * of the history, if that is shorter.
+	 * @return the velocity in x, in pixels per second; `0` if there are fewer than two samples
+	 */
+	@JvmOverloads
+	fun velocityX(windowNanos: Long = DEFAULT_WINDOW_NANOS) = velocity(xs, windowNanos)
+
+	/**
+	 * @see velocityX
+	 * @return the velocity in y, in pixels per second; `0` if there are fewer than two samples
+	 */
+	@JvmOverloads
+	fun velocityY(windowNanos: Long = DEFAULT_WINDOW_NANOS) = velocity(ys, windowNanos)
+
+	/**
+	 * @return the speed (the magnitude of the velocity) in pixels per second
+	 * @see velocityX
+	 */
+	@JvmOverloads
+	fun speed(windowNanos: Long = DEFAULT_WINDOW_NANOS) = Math.hypot(velocityX(windowNanos), velocityY(windowNanos))
+
+	/**
+	 * Estimated from the change of the velocity between the older and the newer half of the window.
+	 *
+	 * @param windowNanos the time span to estimate the acceleration over, up to the latest sample. Shortened to the time
+	 * span of the history, if that is shorter.
+	 * @return the acceleration in x, in pixels per second squared; `0` if there are fewer than two samples
+	 */
+	@JvmOverloads
+	fun accelerationX(windowNanos: Long = DEFAULT_WINDOW_NANOS) = acceleration(xs, windowNanos)
+
+	/**
+	 * @see accelerationX
+	 * @return the acceleration in y, in pixels per second squared; `0` if there are fewer than two samples
+	 */
+	@JvmOverloads
+	fun accelerationY(windowNanos: Long = DEFAULT_WINDOW_NANOS) = acceleration(ys, windowNanos)
+
+	private fun index(age: Int): Int {
+		if (age < 0 || age >= sampleCount) throw IndexOutOfBoundsException("age $age out of bounds for $sampleCount samples")
+		return (next - 1 - age + historySize) % historySize
+	}
+
+	/* the window, shortened to the time span of the history */
+	private fun window(windowNanos: Long): Long {
+		if (sampleCount < 2) return 0L
+		return minOf(windowNanos, nanoTime(0) - nanoTime(sampleCount - 1))
+	}
+
+	private fun velocity(values: DoubleArray, windowNanos: Long): Double {
+		val window = window(windowNanos)
+		if (window <= 0L) return 0.0
+		val latest = nanoTime(0)
+		return (interpolate(values, latest, 0.0) - interpolate(values, latest - window, 0.0)) / window * NANOS_PER_SECOND
+	}
+
+	private fun acceleration(values: DoubleArray, windowNanos: Long): Double {
+		val half = window(windowNanos) / 2
+		if (half <= 0L) return 0.0
+		val latest = nanoTime(0)
+		val newer = interpolate(values, latest, 0.0) - interpolate(values, latest - half, 0.0)
+		val older = interpolate(values, latest - half, 0.0) - interpolate(values, latest - 2 * half, 0.0)
+		val halfSeconds = half / NANOS_PER_SECOND
+		return (newer - older) / halfSeconds / halfSeconds
+	}
+
+	private fun interpolate(values: DoubleArray, nanoTime: Long, fallback: Double): Double {
+		if (sampleCount == 0) return fallback
+		if (nanoTime >= nanoTime(0)) return values[index(0)]
+		/* newest to oldest, so recent times are found quickly */
+		for (age in 1 until sampleCount) {
+			val olderTime = nanoTime(age)
+			if (olderTime <= nanoTime) {
+				val newerTime = nanoTime(age - 1)
+				val older = values[index(age)]
+				val newer = values[index(age - 1)]
+				if (newerTime == olderTime) return newer
+				return older + (newer - older) * (nanoTime - olderTime).toDouble() / (newerTime - olderTime)
+			}
+		}
+		return values[index(sampleCount - 1)]
 	}
 
 	companion object {
 		private val LOG = KotlinLogging.logger {  }
+
+		const val DEFAULT_HISTORY_SIZE = 64
+
+		/**
+		 * Default time span for [velocityX], [velocityY], [accelerationX] and [accelerationY]: 50ms
+		 */
+		const val DEFAULT_WINDOW_NANOS = 50_000_000L
+
+		private const val NANOS_PER_SECOND = 1e9
 	}
 
 }
@@ -0,0 +1,131 @@
+package org.janelia.saalfeldlab.fx.util
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import javafx.beans.value.WritableValue
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.javafx.awaitPulse
+import org.janelia.saalfeldlab.fx.ChannelLoop
+
+/**
+ * Coalesces updates of the UI by key, and applies them in one batch at the next JavaFX pulse.
+ *
+ * Updates can be submitted from any thread. Only the latest update per key is kept until the next pulse, when all pending
+ * updates are applied on the JavaFX Application Thread, in the order their keys were first submitted. This replaces
+ * calling [InvokeOnJavaFXApplicationThread] for each change, which schedules a coroutine per call even when the same
+ * property is updated many times per frame.
+ *
+ * ```kotlin
+ * /* from a background thread, as often as necessary */
+ * FxUpdateCoalescer.shared.set(progressBar.progressProperty(), progress)
+ * FxUpdateCoalescer.shared.update(statusLabel) { statusLabel.text = "Processed $count of $total" }
+ * ```
+ *
+ * @param name for diagnostics
+ */
+class FxUpdateCoalescer @JvmOverloads constructor(val name: String = "FxUpdateCoalescer") {
+
+	private val lock = Any()
+
+	/* guarded by lock; keeps the order in which keys were first submitted */
+	private var pending = LinkedHashMap<Any, () -> Unit>()
+
+	private var scheduled = false
+
+	private val loop by lazy {
+		ChannelLoop(
+			CoroutineScope(SupervisorJob() + Dispatchers.Main.immediate),
+			name = name,
+			policy = ChannelLoop.BackpressurePolicy.LATEST_WINS
+		)
+	}
+
+	/**
+	 * The number of submitted updates
+	 */
+	@Volatile
+	var submittedCount = 0L
+		private set
+
+	/**
+	 * The number of updates that were replaced by a later update for the same key before being applied
+	 */
+	@Volatile
+	var coalescedCount = 0L
+		private set
+
+	/**
+	 * The number of updates that were applied
+	 */
+	@Volatile
+	var appliedCount = 0L
+		private set
+
+	/**
+	 * The number of keys with an update waiting for the next pulse
+	 */
+	val pendingCount: Int
+		get() = synchronized(lock) { pending.size }
+
+	/**
+	 * Apply [update] at the next pulse, unless another update for [key] is submitted before then.
+	 *
+	 * @param key identifies what [update] updates, e.g. the node or property it changes
+	 * @param update to apply on the JavaFX Application Thread
+	 */
+	@JvmSynthetic
+	fun update(key: Any, update: () -> Unit) {
+		val schedule = synchronized(lock) {
+			submittedCount++
+			if (pending.put(key, update) != null) coalescedCount++
+			val schedule = !scheduled
+			scheduled = true
+			schedule
+		}
+		/* at most one batch in the loop at a time */
+		if (schedule) loop.offer {
+			awaitPulse()
+			flush()
+		}
+	}
+
+	fun update(key: Any, update: Runnable) = update(key) { update.run() }
+
+	/**
+	 * Set [target] to [value] at the next pulse, unless [target] is set again before then. Keyed by [target].
+	 */
+	fun <T> set(target: WritableValue<T>, value: T) = update(target) { target.value = value }
+
+	/**
+	 * Apply all pending updates now. Must be called on the JavaFX Application Thread.
+	 */
+	fun flush() {
+		val updates = synchronized(lock) {
+			scheduled = false
+			if (pending.isEmpty()) return
+			pending.also { pending = LinkedHashMap() }
+		}
+		for (update in updates.values) {
+			try {
+				update()
+			} catch (e: Exception) {
+				LOG.error(e) { "Unable to apply update in $name" }
+			}
+		}
+		synchronized(lock) { appliedCount += updates.size }
+	}
+
+	override fun toString() = "$name(submitted=$submittedCount, coalesced=$coalescedCount, applied=$appliedCount)"
+
+	companion object {
+
+		private val LOG = KotlinLogging.logger { }
+
+		/**
+		 * Coalescer shared by the whole application
+		 */
+		@JvmStatic
+		val shared = FxUpdateCoalescer("Shared FxUpdateCoalescer")
+	}
+}
@@ -71,8 +71,11 @@ class InvokeOnJavaFXApplicationThread {
 		 * @param pulses how many pulses to wait between jobs (default 1)
 		 */
 		@JvmStatic
-		fun conflatedPulseLoop(pulses: Int = 1) = ChannelLoop(CoroutineScope(SupervisorJob() + Dispatchers.Main.immediate), Channel.CONFLATED) {
-			repeat(pulses) { awaitPulse() }
-		}
+		fun conflatedPulseLoop(pulses: Int = 1) = ChannelLoop(
+			CoroutineScope(SupervisorJob() + Dispatchers.Main.immediate),
+			Channel.CONFLATED,
+			delay = { repeat(pulses) { awaitPulse() } },
+			policy = ChannelLoop.BackpressurePolicy.LATEST_WINS
+		)
 	}
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package org.janelia.saalfeldlab.fx.util
+
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.javafx.awaitPulse
+
+/**
+ * Collapses all values [submit]ted between two JavaFX pulses into a single call of [deliver] with the latest value.
+ *
+ * Must only be used from the JavaFX Application Thread.
+ *
+ * @param deliver called with the latest submitted value, at the next pulse or on [flush]
+ */
+internal class PulseCoalescer<T : Any>(private val deliver: (T) -> Unit) {
+
+	private var pending: T? = null
+	private var scheduled: Job? = null
+
+	/**
+	 * Whether a value is waiting to be delivered.
+	 */
+	val hasPending: Boolean
+		get() = pending != null
+
+	/**
+	 * Replace the pending value with [value], and schedule its delivery for the next pulse if not already scheduled.
+	 */
+	fun submit(value: T) {
+		pending = value
+		if (scheduled == null) {
+			scheduled = InvokeOnJavaFXApplicationThread {
+				awaitPulse()
+				scheduled = null
+				deliverPending()
+			}
+		}
+	}
+
+	/**
+	 * Deliver the pending value now, if there is one, instead of at the next pulse.
+	 */
+	fun flush() {
+		scheduled?.cancel()
+		scheduled = null
+		deliverPending()
+	}
+
+	/**
+	 * Drop the pending value without delivering it.
+	 */
+	fun cancel() {
+		scheduled?.cancel()
+		scheduled = null
+		pending = null
+	}
+
+	private fun deliverPending() {
+		val value = pending ?: return
+		pending = null
+		deliver(value)
+	}
+}
@@ -0,0 +1,104 @@
+package org.janelia.saalfeldlab.fx
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import java.util.Collections
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class ChannelLoopTest {
+
+	private fun loop(policy: ChannelLoop.BackpressurePolicy, capacity: Int = 1) =
+		ChannelLoop(CoroutineScope(SupervisorJob() + Dispatchers.Default), capacity, policy = policy)
+
+	/* submit a job that blocks the loop, and wait until it runs */
+	private fun ChannelLoop.block(): CompletableDeferred<Unit> = runBlocking {
+		val started = CompletableDeferred<Unit>()
+		val blocker = CompletableDeferred<Unit>()
+		offer {
+			started.complete(Unit)
+			blocker.await()
+		}
+		withTimeout(5_000) { started.await() }
+		blocker
+	}
+
+	@Test
+	fun `drop newest keeps the queued jobs`() = runBlocking {
+		val loop = loop(ChannelLoop.BackpressurePolicy.DROP_NEWEST)
+		val executed = Collections.synchronizedList(mutableListOf<Int>())
+		val blocker = loop.block()
+
+		assertTrue(loop.offer { executed += 1 })
+		assertFalse(loop.offer { executed += 2 })
+		val dropped = loop.submit { executed += 3 }
+		assertTrue(dropped.isCancelled)
+
+		blocker.complete(Unit)
+		withTimeout(5_000) { while (executed.isEmpty()) delay(1) }
+		assertEquals(listOf(1), executed)
+		assertEquals(4, loop.submittedCount)
+		assertEquals(2, loop.droppedCount)
+		assertEquals(2, loop.executedCount)
+		loop.cancel()
+	}
+
+	@Test
+	fun `drop oldest and latest wins keep the newest jobs`() = runBlocking {
+		for (policy in listOf(ChannelLoop.BackpressurePolicy.DROP_OLDEST, ChannelLoop.BackpressurePolicy.LATEST_WINS)) {
+			val loop = loop(policy, capacity = 2)
+			val executed = Collections.synchronizedList(mutableListOf<Int>())
+			val blocker = loop.block()
+
+			val jobs = (1..3).map { i -> loop.submit { executed += i } }
+			blocker.complete(Unit)
+			jobs.last().join()
+
+			val expected = if (policy == ChannelLoop.BackpressurePolicy.LATEST_WINS) listOf(3) else listOf(2, 3)
+			assertEquals(expected, executed, "$policy")
+			assertTrue(jobs.first().isCancelled, "$policy")
+			assertEquals(3L - expected.size, loop.droppedCount, "$policy")
+			loop.cancel()
+		}
+	}
+
+	@Test
+	fun `suspend keeps every job in order`() = runBlocking {
+		val loop = loop(ChannelLoop.BackpressurePolicy.SUSPEND)
+		val executed = Collections.synchronizedList(mutableListOf<Int>())
+		val blocker = loop.block()
+
+		val jobs = (1..5).map { i -> loop.submit { executed += i } }
+		blocker.complete(Unit)
+		jobs.last().join()
+
+		assertEquals(listOf(1, 2, 3, 4, 5), executed)
+		assertEquals(0, loop.droppedCount)
+		loop.cancel()
+	}
+
+	@Test
+	fun `jobs cancelled while queued are not counted as executed`() = runBlocking {
+		val loop = loop(ChannelLoop.BackpressurePolicy.SUSPEND, capacity = 2)
+		val executed = Collections.synchronizedList(mutableListOf<Int>())
+		val blocker = loop.block()
+
+		loop.submit { executed += 1 }.cancel()
+		val last = loop.submit { executed += 2 }
+		blocker.complete(Unit)
+		last.join()
+
+		assertEquals(listOf(2), executed)
+		/* the blocker and the last job */
+		assertEquals(2, loop.executedCount)
+		loop.cancel()
+	}
+}
@@ -0,0 +1,69 @@
+package org.janelia.saalfeldlab.fx
+
+import javafx.beans.InvalidationListener
+import javafx.scene.Scene
+import javafx.scene.layout.Pane
+import javafx.stage.Stage
+import org.testfx.framework.junit.ApplicationTest
+import org.testfx.util.WaitForAsyncUtils
+import java.util.concurrent.TimeUnit
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class ObservablePositionTest : ApplicationTest() {
+
+	override fun start(stage: Stage) {
+		stage.scene = Scene(Pane(), 100.0, 100.0)
+		stage.show()
+	}
+
+	@Test
+	fun `listeners are notified once with both coordinates updated`() {
+		val position = ObservablePosition(0.0, 0.0)
+		val seen = mutableListOf<String>()
+		position.xProperty.addListener { _, _, x -> seen += "x $x ${position.y}" }
+		position.yProperty.addListener { _, _, y -> seen += "y ${position.x} $y" }
+		position.addListener(InvalidationListener { seen += "position $position" })
+		position.addListener(ObservablePosition.PositionListener { x, y -> seen += "primitive $x $y" })
+
+		position.set(1.0, 2.0)
+		assertEquals(listOf("x 1.0 2.0", "y 1.0 2.0", "position (1.0, 2.0)", "primitive 1.0 2.0"), seen)
+
+		seen.clear()
+		position.set(1.0, 2.0)
+		position.setY(3.0)
+		assertEquals(listOf("y 1.0 3.0", "position (1.0, 3.0)", "primitive 1.0 3.0"), seen)
+	}
+
+	@Test
+	fun `batched positions are published once per pulse`() {
+		val position = ObservablePosition(0.0, 0.0)
+		val seen = mutableListOf<String>()
+		position.addListener(ObservablePosition.PositionListener { x, y -> seen += "$x $y" })
+		position.xProperty.addListener { _, _, x -> seen += "x $x" }
+
+		interact(Runnable {
+			position.batchPerPulse = true
+			position.set(1.0, 2.0)
+			position.set(3.0, 4.0)
+			position.setX(5.0)
+			/* not published before the pulse */
+			assertEquals("(0.0, 0.0)", position.toString())
+		})
+		WaitForAsyncUtils.waitFor(5, TimeUnit.SECONDS) { seen.isNotEmpty() }
+		WaitForAsyncUtils.waitForFxEvents()
+		interact(Runnable { assertEquals(listOf("x 5.0", "5.0 4.0"), seen) })
+
+		seen.clear()
+		interact(Runnable {
+			position.set(6.0, 7.0)
+			assertEquals(emptyList(), seen)
+			position.batchPerPulse = false
+			assertEquals(listOf("x 6.0", "6.0 7.0"), seen)
+			position.set(8.0, 7.0)
+		})
+		/* the flush that was scheduled for the pulse has nothing left to publish */
+		WaitForAsyncUtils.waitForFxEvents()
+		interact(Runnable { assertEquals(listOf("x 6.0", "6.0 7.0", "x 8.0", "8.0 7.0"), seen) })
+	}
+}
@@ -0,0 +1,66 @@
+package org.janelia.saalfeldlab.fx
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.runBlocking
+import java.util.Collections
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertSame
+
+class TaskLaneTest {
+
+	private val defaultMaxTotalConcurrency = TaskLane.maxTotalConcurrency
+
+	@AfterTest
+	fun restoreMaxTotalConcurrency() {
+		TaskLane.maxTotalConcurrency = defaultMaxTotalConcurrency
+	}
+
+	@Test
+	fun `lanes schedule by priority and queue policy`() = runBlocking {
+		TaskLane.maxTotalConcurrency = 1
+		val low = TaskLane("low", priority = 0, maxConcurrency = 1, policy = TaskLane.QueuePolicy.LIFO)
+		val high = TaskLane("high", priority = 10, maxConcurrency = 1)
+		val started = Collections.synchronizedList(mutableListOf<String>())
+
+		val blocker = CompletableDeferred<Unit>()
+		val blocking = Tasks(low) { started += "blocking"; blocker.await() }
+		assertSame(low, blocking.lane)
+		while (low.running == 0) Thread.yield()
+
+		/* queue one after the other, so the queue order is deterministic */
+		fun queue(lane: TaskLane, name: String): UtilityTask<Unit> {
+			val depth = low.queueDepth + high.queueDepth
+			return Tasks(lane) { started += name }.also {
+				while (low.queueDepth + high.queueDepth == depth) Thread.yield()
+			}
+		}
+		val tasks = listOf(queue(low, "low 1"), queue(low, "low 2"), queue(high, "high 1"), queue(high, "high 2"))
+		assertEquals(2, low.queueDepth)
+		assertEquals(2, high.queueDepth)
+
+		blocker.complete(Unit)
+		tasks.forEach { it.await() }
+		assertEquals(listOf("blocking", "high 1", "high 2", "low 2", "low 1"), started)
+		assertEquals(0, low.running + high.running)
+	}
+
+	@Test
+	fun `cancelled tasks leave the queue`() = runBlocking {
+		val lane = TaskLane("single", priority = 0, maxConcurrency = 1)
+		val blocker = CompletableDeferred<Unit>()
+		val blocking = Tasks(lane) { blocker.await() }
+		val queued = Tasks(lane) { "never" }
+		while (lane.queueDepth == 0) Thread.yield()
+
+		queued.cancel()
+		queued.join()
+		assertEquals(0, lane.queueDepth)
+
+		blocker.complete(Unit)
+		blocking.await()
+		assertEquals("next", Tasks(lane) { "next" }.await())
+		assertEquals(0, lane.running)
+	}
+}
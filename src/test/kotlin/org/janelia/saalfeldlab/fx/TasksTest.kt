@@ -8,6 +8,8 @@ import javafx.scene.control.ListView
 import javafx.scene.input.MouseEvent
 import javafx.scene.layout.Pane
 import javafx.stage.Stage
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asCoroutineDispatcher
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.runBlocking
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
@@ -15,11 +17,16 @@ import org.junit.Assert
 import org.testfx.framework.junit.ApplicationTest
 import org.testfx.util.WaitForAsyncUtils
 import java.io.PrintStream
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
 import kotlin.coroutines.cancellation.CancellationException
 import kotlin.test.BeforeTest
 import kotlin.test.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
 import kotlin.test.assertIs
+import kotlin.test.assertTrue
 
 class TasksTest : ApplicationTest() {
 
@@ -242,6 +249,83 @@ class TasksTest : ApplicationTest() {
 		assertEquals(39, end)
 	}
 
+	@Test
+	fun `io and named dispatchers run tasks with the same callbacks`() {
+		var ioThread: Thread? = null
+		var success: String? = null
+		Tasks.io { ioThread = Thread.currentThread(); "io" }
+			.onSuccess { success = it }
+			.wait()
+		assertTrue(ioThread!!.isVirtual)
+		assertEquals("io", success)
+
+		val executor = Executors.newSingleThreadExecutor { runnable -> Thread(runnable, "named-dispatcher-test") }
+		Tasks.registerDispatcher("test", executor.asCoroutineDispatcher())
+		try {
+			assertFailsWith<IllegalArgumentException> { Tasks.registerDispatcher("test", Dispatchers.Default) }
+			assertEquals("named-dispatcher-test", Tasks.submit("test", Supplier { Thread.currentThread().name }).get())
+
+			var cancelled = false
+			Tasks("test") { delay(10_000) }
+				.onCancelled { cancelled = true }
+				.also {
+					it.cancel()
+					it.wait()
+				}
+			assertTrue(cancelled)
+		} finally {
+			Tasks.unregisterDispatcher("test")
+			executor.shutdown()
+		}
+		assertFailsWith<IllegalArgumentException> { Tasks("test") { } }
+	}
+
+	@Test
+	fun `get on the FX thread runs a nested event loop or fails fast`() {
+		val task = Tasks {
+			delay(100)
+			InvokeOnJavaFXApplicationThread { "posted back" }.await()
+		}
+		var result: String? = null
+		interact(Runnable { result = task.get() })
+		assertEquals("posted back", result)
+
+		UtilityTask.fxThreadAwait = UtilityTask.FxThreadAwait.FAIL
+		try {
+			val pending = Tasks { delay(10_000) }
+			var failure: Throwable? = null
+			interact(Runnable { failure = runCatching { pending.wait() }.exceptionOrNull() })
+			assertIs<IllegalStateException>(failure)
+			pending.cancel()
+		} finally {
+			UtilityTask.fxThreadAwait = UtilityTask.FxThreadAwait.NESTED_EVENT_LOOP
+		}
+
+		val onFxThread = runBlocking { Tasks { "result" }.awaitFx { Platform.isFxApplicationThread() } }
+		assertTrue(onFxThread)
+	}
+
+	@Test
+	fun `task updates are conflated and delivered on the FX thread`() {
+		val delivered = mutableListOf<Int>()
+		var onFxThread = true
+		val updates = TaskUpdates<Int>().onUpdate {
+			onFxThread = onFxThread && Platform.isFxApplicationThread()
+			delivered += it
+		}
+		val result = Tasks(updates) {
+			repeat(10_000) { emit(it) }
+			"done"
+		}.get()
+
+		assertEquals("done", result)
+		WaitForAsyncUtils.waitFor(5, TimeUnit.SECONDS) { delivered.lastOrNull() == 9_999 }
+		WaitForAsyncUtils.waitForFxEvents()
+		assertTrue(onFxThread)
+		assertTrue(delivered.size < 10_000)
+		assertEquals(delivered.sorted(), delivered)
+	}
+
 	companion object {
 		private val LOG = KotlinLogging.logger { }
 
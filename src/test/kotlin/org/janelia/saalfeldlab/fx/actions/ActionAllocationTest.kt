@@ -0,0 +1,147 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.event.Event
+import javafx.event.EventDispatchChain
+import javafx.event.EventHandler
+import javafx.event.EventTarget
+import javafx.event.EventType
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.KeyEvent.KEY_PRESSED
+import javafx.scene.input.KeyEvent.KEY_RELEASED
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent.MOUSE_MOVED
+import javafx.scene.input.MouseEvent.MOUSE_PRESSED
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import org.janelia.saalfeldlab.fx.event.KeyTracker
+import org.junit.Assume
+import java.lang.management.ManagementFactory
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import com.sun.management.ThreadMXBean as AllocationThreadMXBean
+
+/**
+ * Dispatching an event through an [Action] should not allocate, as long as trace logging is disabled.
+ */
+class ActionAllocationTest {
+
+	private val threadMXBean = ManagementFactory.getThreadMXBean() as AllocationThreadMXBean
+
+	private val keyTracker = KeyTracker()
+
+	@BeforeTest
+	fun assumeAllocationsAreMeasurable() {
+		Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported)
+		threadMXBean.isThreadAllocatedMemoryEnabled = true
+	}
+
+	@Test
+	fun `mouse action dispatch does not allocate`() {
+		keyTracker.addKey(KeyCode.CONTROL)
+		var count = 0
+		val action = MouseAction(MOUSE_PRESSED).apply {
+			keyTracker = { this@ActionAllocationTest.keyTracker }
+			consume = false
+			keysDown(KeyCode.CONTROL, exclusive = true)
+			verifyButtonTrigger(MouseButton.PRIMARY, exclusive = true)
+			verifyButtonsDown(MouseButton.PRIMARY, exclusive = true)
+			verify("always valid") { true }
+			onAction { count++ }
+		}
+		val valid = mouseEvent(MOUSE_PRESSED, MouseButton.PRIMARY, primaryDown = true)
+		val wrongButton = mouseEvent(MOUSE_PRESSED, MouseButton.SECONDARY, secondaryDown = true)
+		val wrongEventType = mouseEvent(MOUSE_MOVED)
+
+		assertEquals(0L, allocatedBytesPerCall { action(valid) })
+		assertEquals(0L, allocatedBytesPerCall { action(wrongButton) })
+		assertEquals(0L, allocatedBytesPerCall { action(wrongEventType) })
+		assertTrue(count > 0)
+	}
+
+	@Test
+	fun `key action dispatch does not allocate`() {
+		keyTracker.addKey(KeyCode.CONTROL)
+		keyTracker.addKey(KeyCode.A)
+		var count = 0
+		val pressed = KeyAction(KEY_PRESSED).apply {
+			keyTracker = { this@ActionAllocationTest.keyTracker }
+			consume = false
+			keysDown(KeyCode.CONTROL, KeyCode.A, exclusive = true)
+			onAction { count++ }
+		}
+		val notExclusive = KeyAction(KEY_PRESSED).apply {
+			keyTracker = { this@ActionAllocationTest.keyTracker }
+			consume = false
+			keysDown(KeyCode.A, exclusive = false)
+			onAction { count++ }
+		}
+		val released = KeyAction(KEY_RELEASED).apply {
+			keyTracker = { this@ActionAllocationTest.keyTracker }
+			consume = false
+			keysReleased(KeyCode.CONTROL, KeyCode.B)
+			onAction { count++ }
+		}
+		val pressedEvent = keyEvent(KEY_PRESSED, KeyCode.A)
+		val releasedEvent = keyEvent(KEY_RELEASED, KeyCode.B)
+
+		assertEquals(0L, allocatedBytesPerCall { pressed(pressedEvent) })
+		assertEquals(0L, allocatedBytesPerCall { notExclusive(pressedEvent) })
+		assertEquals(0L, allocatedBytesPerCall { released(releasedEvent) })
+		assertTrue(count > 0)
+	}
+
+	@Test
+	fun `action set dispatch does not allocate`() {
+		var count = 0
+		val actionSet = ActionSet("allocation free", { keyTracker }) {
+			verifyAll(Event.ANY, "always valid") { true }
+			MOUSE_PRESSED(MouseButton.PRIMARY) {
+				consume = false
+				onAction { count++ }
+			}
+			MOUSE_MOVED {
+				consume = false
+				onAction { count++ }
+			}
+		}
+		val target = HandlerCapturingTarget()
+		target.installActionSet(actionSet)
+		val event = mouseEvent(MOUSE_PRESSED, MouseButton.PRIMARY, primaryDown = true)
+
+		assertEquals(0L, allocatedBytesPerCall { for (i in target.handlers.indices) target.handlers[i].handle(event) })
+		assertTrue(count > 0)
+	}
+
+	private fun allocatedBytesPerCall(calls: Int = 10_000, call: () -> Unit): Long {
+		/* warm up, so one-time lazy initialization isn't measured */
+		repeat(calls) { call() }
+		val before = threadMXBean.currentThreadAllocatedBytes
+		repeat(calls) { call() }
+		val after = threadMXBean.currentThreadAllocatedBytes
+		return (after - before) / calls
+	}
+
+	private class HandlerCapturingTarget : EventTarget {
+
+		val handlers = mutableListOf<EventHandler<Event>>()
+
+		override fun buildEventDispatchChain(tail: EventDispatchChain) = tail
+
+		@Suppress("UNCHECKED_CAST")
+		override fun <E : Event> addEventHandler(eventType: EventType<E>, eventHandler: EventHandler<in E>) {
+			handlers += eventHandler as EventHandler<Event>
+		}
+
+		@Suppress("UNCHECKED_CAST")
+		override fun <E : Event> addEventFilter(eventType: EventType<E>, eventFilter: EventHandler<in E>) {
+			handlers += eventFilter as EventHandler<Event>
+		}
+	}
+
+	companion object {
+		private fun keyEvent(eventType: EventType<KeyEvent>, code: KeyCode) = KeyEvent(eventType, "", "", code, false, false, false, false)
+	}
+}
@@ -0,0 +1,84 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.scene.Scene
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent.MOUSE_PRESSED
+import javafx.scene.layout.Pane
+import javafx.stage.Stage
+import kotlinx.coroutines.CompletableDeferred
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import org.testfx.framework.junit.ApplicationTest
+import org.testfx.util.WaitForAsyncUtils
+import java.util.concurrent.TimeUnit
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class ActionAsyncTest : ApplicationTest() {
+
+	override fun start(stage: Stage) {
+		stage.scene = Scene(Pane(), 100.0, 100.0)
+		stage.show()
+	}
+
+	@Test
+	fun `only the latest async invocation delivers its result`() {
+		val results = mutableListOf<Int>()
+		val firstStarted = CompletableDeferred<Unit>()
+		val neverCompletes = CompletableDeferred<Unit>()
+		var invocation = 0
+		val action = MouseAction(MOUSE_PRESSED).apply {
+			verifyButtonTrigger(MouseButton.PRIMARY)
+			onActionAsync({ results += it }) {
+				val current = ++invocation
+				if (current == 1) {
+					firstStarted.complete(Unit)
+					neverCompletes.await()
+				}
+				current
+			}
+		}
+
+		val first = mouseEvent(MOUSE_PRESSED, MouseButton.PRIMARY, primaryDown = true)
+		interact(Runnable { action(first) })
+		assertTrue(first.isConsumed)
+		WaitForAsyncUtils.waitFor(5, TimeUnit.SECONDS) { firstStarted.isCompleted }
+
+		interact(Runnable { action(mouseEvent(MOUSE_PRESSED, MouseButton.PRIMARY, primaryDown = true)) })
+		WaitForAsyncUtils.waitFor(5, TimeUnit.SECONDS) { results.isNotEmpty() }
+		WaitForAsyncUtils.waitForFxEvents()
+
+		assertEquals(listOf(2), results)
+	}
+
+	@Test
+	fun `async failures are passed to the exception handler`() {
+		val handled = mutableListOf<String>()
+		val action = MouseAction(MOUSE_PRESSED).apply {
+			handleException { handled += it.message!! }
+			onActionAsync<Unit> { error("failed in background") }
+		}
+
+		interact(Runnable { action(mouseEvent(MOUSE_PRESSED)) })
+		WaitForAsyncUtils.waitFor(5, TimeUnit.SECONDS) { handled.isNotEmpty() }
+
+		assertEquals(listOf("failed in background"), handled)
+	}
+
+	@Test
+	fun `results of handlers that complete immediately are delivered`() {
+		val results = mutableListOf<Double>()
+		val action = MouseAction(MOUSE_PRESSED).apply {
+			onActionAsync({ results += it }) { it!!.x }
+		}
+
+		interact(Runnable {
+			for (x in 1..20) action(mouseEvent(MOUSE_PRESSED, x = x.toDouble()))
+		})
+		WaitForAsyncUtils.waitFor(5, TimeUnit.SECONDS) { results.lastOrNull() == 20.0 }
+		WaitForAsyncUtils.waitForFxEvents()
+
+		assertEquals(20.0, results.last())
+		assertEquals(results.sorted(), results)
+	}
+}
@@ -0,0 +1,98 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.event.Event
+import javafx.scene.Group
+import javafx.scene.input.MouseEvent.MOUSE_PRESSED
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import java.lang.management.ManagementFactory
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class ActionMetricsTest {
+
+	@BeforeTest
+	fun enable() {
+		ActionMetrics.enabled = true
+		ActionMetrics.reset()
+	}
+
+	@AfterTest
+	fun disable() {
+		ActionMetrics.enabled = false
+		ActionMetrics.unregisterMBean()
+	}
+
+	@Test
+	fun `invocations and rejections are recorded per action and check`() {
+		var valid = true
+		var allValid = true
+		val actionSet = ActionSet("metrics") {
+			verifyAll(MOUSE_PRESSED, "all valid") { allValid }
+			MOUSE_PRESSED {
+				name = "metrics test"
+				verify("is valid") { valid }
+				onAction { }
+			}
+		}
+		val node = Group().apply { installActionSet(actionSet) }
+
+		repeat(3) { Event.fireEvent(node, mouseEvent(MOUSE_PRESSED)) }
+		valid = false
+		repeat(2) { Event.fireEvent(node, mouseEvent(MOUSE_PRESSED)) }
+		allValid = false
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+
+		val metrics = ActionMetrics["metrics test"]
+		assertEquals(3, metrics.invocationCount)
+		assertEquals(3, metrics.rejectionCount)
+		assertEquals(mapOf("is valid" to 2L, "${ActionMetrics.VERIFY_ALL_REJECTION_PREFIX}all valid" to 1L), metrics.rejectionsByCheck)
+		assertTrue(metrics.maxActionNanos <= metrics.totalActionNanos)
+
+		ActionMetrics.registerMBean()
+		val server = ManagementFactory.getPlatformMBeanServer()
+		val invocations = server.invoke(ActionMetrics.OBJECT_NAME, "getInvocationCount", arrayOf("metrics test"), arrayOf(String::class.java.name))
+		assertEquals(3L, invocations)
+	}
+
+	@Test
+	fun `actions with state are recorded once per trigger`() {
+		var run = 0
+		val actionSet = ActionSet("state metrics") {
+			MOUSE_PRESSED {
+				name = "valid state"
+				consume = false
+				onActionWithState<ActionStateTest.TestState> { run++ }
+			}
+			MOUSE_PRESSED {
+				name = "invalid state"
+				onActionWithState<ActionStateTest.InvalidTestState> { run++ }
+			}
+		}
+		val node = Group().apply { installActionSet(actionSet) }
+
+		repeat(2) { Event.fireEvent(node, mouseEvent(MOUSE_PRESSED)) }
+		assertEquals(2, run)
+
+		val valid = ActionMetrics["valid state"]
+		assertEquals(2, valid.invocationCount)
+		assertEquals(0, valid.rejectionCount)
+
+		val invalid = ActionMetrics["invalid state"]
+		assertEquals(0, invalid.invocationCount)
+		assertEquals(2, invalid.rejectionCount)
+	}
+
+	@Test
+	fun `nothing is recorded when disabled`() {
+		ActionMetrics.enabled = false
+		Action(Event.ANY).apply {
+			name = "disabled metrics test"
+			onAction { }
+		}.invoke()
+		assertTrue("disabled metrics test" !in ActionMetrics.actionNames)
+	}
+}
@@ -0,0 +1,104 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.event.Event
+import javafx.scene.Group
+import javafx.scene.Scene
+import javafx.scene.input.MouseEvent.MOUSE_PRESSED
+import javafx.scene.layout.Pane
+import javafx.stage.Stage
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSetUntilDetached
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import org.testfx.framework.junit.ApplicationTest
+import org.testfx.util.WaitForAsyncUtils
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class ActionSetLeakTest : ApplicationTest() {
+
+	private val root = Pane()
+
+	override fun start(stage: Stage) {
+		stage.scene = Scene(root, 100.0, 100.0)
+		stage.show()
+	}
+
+	@AfterTest
+	fun disableLeakDetection() {
+		ActionSetLeakDetector.enabled = false
+		ActionSetLeakDetector.clear()
+	}
+
+	@Test
+	fun `action set is removed when the node leaves the scene graph`() {
+		var triggered = 0
+		var cleanedUp = 0
+		val actionSet = object : ActionSet("detaching", apply = { MOUSE_PRESSED { onAction { triggered++ } } }) {
+			override fun postRemoveCleanUp() {
+				cleanedUp++
+			}
+		}
+		val node = Group()
+		interact(Runnable {
+			/* installed before being attached; must survive being attached */
+			node.installActionSetUntilDetached(actionSet)
+			root.children += node
+			Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+			root.children -= node
+		})
+		WaitForAsyncUtils.waitForFxEvents()
+		interact(Runnable {
+			Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+			root.children += node
+			Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		})
+		assertEquals(1, triggered)
+		assertEquals(1, cleanedUp)
+	}
+
+	@Test
+	fun `action set stays installed when the node is moved to another parent`() {
+		var triggered = 0
+		var cleanedUp = 0
+		val actionSet = object : ActionSet("moved", apply = { MOUSE_PRESSED { onAction { triggered++ } } }) {
+			override fun postRemoveCleanUp() {
+				cleanedUp++
+			}
+		}
+		val node = Group()
+		val oldParent = Group(node)
+		val newParent = Group()
+		interact(Runnable {
+			root.children.addAll(oldParent, newParent)
+			node.installActionSetUntilDetached(actionSet)
+			newParent.children += node
+		})
+		WaitForAsyncUtils.waitForFxEvents()
+		interact(Runnable { Event.fireEvent(node, mouseEvent(MOUSE_PRESSED)) })
+		assertEquals(1, triggered)
+		assertEquals(0, cleanedUp)
+	}
+
+	@Test
+	fun `leak detector reports action sets on detached nodes`() {
+		ActionSetLeakDetector.enabled = true
+		val detached = Group(Group(), Group())
+		val attached = Group()
+		val removed = Group()
+		/* the detector only references them weakly; these install no handlers that would keep them alive */
+		val leaked = ActionSet("leaked")
+		interact(Runnable {
+			root.children.addAll(detached, attached, removed)
+			detached.installActionSet(leaked)
+			attached.installActionSet(ActionSet("attached"))
+			val subscription = removed.installActionSet(ActionSet("removed"))
+			root.children.removeAll(detached, removed)
+			subscription.unsubscribe()
+		})
+
+		val leaks = ActionSetLeakDetector.report()
+		assertEquals(listOf(listOf(leaked.name)), leaks.map { it.actionSets })
+		assertEquals(3, leaks.single().retainedNodes)
+	}
+}
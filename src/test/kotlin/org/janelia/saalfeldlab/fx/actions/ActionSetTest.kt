@@ -0,0 +1,303 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.event.Event
+import javafx.event.EventType
+import javafx.scene.Group
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyCodeCombination
+import javafx.scene.input.KeyCombination
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.KeyEvent.KEY_PRESSED
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent
+import javafx.scene.input.MouseEvent.MOUSE_MOVED
+import javafx.scene.input.MouseEvent.MOUSE_PRESSED
+import org.janelia.saalfeldlab.fx.actions.ActionDispatcher.Companion.actionDispatcher
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.swapActionSets
+import org.janelia.saalfeldlab.fx.event.KeyTracker
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertSame
+
+class ActionSetTest {
+
+	@Test
+	fun `verifyAll checks are inherited by sub event types`() {
+		var pressedCount = 0
+		var movedCount = 0
+		var mouseEventsValid = true
+		var movedValid = true
+
+		val actionSet = ActionSet("inherited checks") {
+			verifyAll(MouseEvent.ANY, "mouse events valid") { mouseEventsValid }
+			MOUSE_PRESSED { onAction { pressedCount++ } }
+			MOUSE_MOVED { onAction { movedCount++ } }
+		}
+		val node = Group().apply { installActionSet(actionSet) }
+
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		Event.fireEvent(node, mouseEvent(MOUSE_MOVED))
+		assertEquals(1, pressedCount)
+		assertEquals(1, movedCount)
+
+		mouseEventsValid = false
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		Event.fireEvent(node, mouseEvent(MOUSE_MOVED))
+		assertEquals(1, pressedCount)
+		assertEquals(1, movedCount)
+
+		/* checks added after installation must still apply */
+		mouseEventsValid = true
+		actionSet.verifyAll(MOUSE_MOVED, "moved valid") { movedValid }
+		movedValid = false
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		Event.fireEvent(node, mouseEvent(MOUSE_MOVED))
+		assertEquals(2, pressedCount)
+		assertEquals(1, movedCount)
+	}
+
+	@Test
+	fun `actions on a super event type handle sub event types`() {
+		var anyCount = 0
+		val actionSet = ActionSet("super type") {
+			MouseEvent.ANY { onAction { anyCount++ } }
+		}
+		val node = Group().apply { installActionSet(actionSet) }
+
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		Event.fireEvent(node, mouseEvent(MOUSE_MOVED))
+		assertEquals(2, anyCount)
+	}
+
+	@Test
+	fun `multiplexed handlers keep order and consume semantics`() {
+		for (stopOnConsumed in listOf(false, true)) {
+			val triggered = mutableListOf<String>()
+			val actionSet = ActionSet("multiplexed") {
+				multiplexHandlers = true
+				this.stopOnConsumed = stopOnConsumed
+				MouseEvent.ANY { onAction { triggered += "any" } }
+				MOUSE_PRESSED {
+					consume = false
+					onAction { triggered += "first" }
+				}
+				MOUSE_PRESSED { onAction { triggered += "second" } }
+				MOUSE_PRESSED { onAction { triggered += "third" } }
+				MOUSE_MOVED { onAction { triggered += "moved" } }
+			}
+			val node = Group()
+			val subscription = node.installActionSet(actionSet)
+
+			Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+			assertEquals(listOf("first", "second"), triggered)
+
+			triggered.clear()
+			Event.fireEvent(node, mouseEvent(MOUSE_MOVED))
+			assertEquals(listOf("moved"), triggered)
+
+			triggered.clear()
+			subscription.unsubscribe()
+			Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+			assertEquals(emptyList(), triggered)
+		}
+	}
+
+	@Test
+	fun `multiplexed handlers evaluate verifyAll checks once per event`() {
+		var evaluated = 0
+		var valid = true
+		val triggered = mutableListOf<String>()
+		val actionSet = ActionSet("checked once") {
+			multiplexHandlers = true
+			verifyAll(MouseEvent.ANY, "valid") { evaluated++; valid }
+			MOUSE_PRESSED {
+				consume = false
+				onAction { triggered += "first" }
+			}
+			MOUSE_PRESSED {
+				consume = false
+				onAction { triggered += "second" }
+			}
+			/* reached by the same event, in the handler of the super type */
+			MouseEvent.ANY {
+				consume = false
+				onAction { triggered += "any" }
+			}
+		}
+		val node = Group().apply { installActionSet(actionSet) }
+
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		assertEquals(1, evaluated)
+		assertEquals(listOf("first", "second", "any"), triggered)
+
+		triggered.clear()
+		valid = false
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		assertEquals(2, evaluated)
+		assertEquals(emptyList(), triggered)
+
+		/* only the handler of the super type */
+		valid = true
+		Event.fireEvent(node, mouseEvent(MOUSE_MOVED))
+		assertEquals(3, evaluated)
+		assertEquals(listOf("any"), triggered)
+	}
+
+	@Test
+	fun `indexed key bindings only test candidate actions`() {
+		val save = NamedKeyCombination("save", KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN))
+		val open = NamedKeyCombination("open", KeyCodeCombination(KeyCode.O, KeyCombination.CONTROL_DOWN))
+		val keyTracker = KeyTracker()
+		val tested = mutableListOf<String>()
+		val triggered = mutableListOf<String>()
+		val actionSet = ActionSet("indexed", { keyTracker }) {
+			multiplexHandlers = true
+			indexKeyBindings = true
+			KEY_PRESSED(save) {
+				verify { tested += "save"; true }
+				consume = false
+				onAction { triggered += "save" }
+			}
+			KEY_PRESSED {
+				ignoreKeys()
+				consume = false
+				onAction { triggered += "any" }
+			}
+			KEY_PRESSED(open) {
+				verify { tested += "open"; true }
+				onAction { triggered += "open" }
+			}
+		}
+		val node = Group().apply { installActionSet(actionSet) }
+
+		keyTracker.addKey(KeyCode.CONTROL)
+		keyTracker.addKey(KeyCode.S)
+		Event.fireEvent(node, keyEvent(KeyCode.S, controlDown = true))
+		assertEquals(listOf("save"), tested)
+		assertEquals(listOf("save", "any"), triggered)
+
+		/* rebinding updates the index */
+		tested.clear()
+		triggered.clear()
+		open.primaryCombination = KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN)
+		Event.fireEvent(node, keyEvent(KeyCode.S, controlDown = true))
+		assertEquals(listOf("save", "open"), tested)
+		assertEquals(listOf("save", "any", "open"), triggered)
+	}
+
+	@Test
+	fun `action dispatcher orders action sets by priority and stops when consumed`() {
+		val tested = mutableListOf<String>()
+		fun actionSet(setName: String, consume: Boolean) = ActionSet(setName) {
+			MOUSE_PRESSED {
+				verify { tested += setName; true }
+				this.consume = consume
+				onAction { }
+			}
+		}
+		val low = actionSet("low", consume = true)
+		val high = actionSet("high", consume = false)
+		val highest = actionSet("highest", consume = true)
+
+		val node = Group()
+		val dispatcher = node.actionDispatcher()
+		dispatcher.install(low)
+		val highSubscription = dispatcher.install(high, priority = 10)
+		assertSame(dispatcher, node.actionDispatcher())
+		assertEquals(listOf(high, low), dispatcher.installed.map { it.actionSet })
+
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		assertEquals(listOf("high", "low"), tested)
+
+		tested.clear()
+		dispatcher.install(highest, priority = 20)
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		assertEquals(listOf("highest"), tested)
+		assertEquals(listOf(highest, high, low).map { it.actions.single() }, dispatcher.actionsFor(MOUSE_PRESSED))
+
+		tested.clear()
+		dispatcher.remove(highest)
+		highSubscription.unsubscribe()
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		assertEquals(listOf("low"), tested)
+	}
+
+	@Test
+	fun `swapping action sets only touches the difference and reverts on failure`() {
+		val tested = mutableListOf<String>()
+		val lifecycle = mutableListOf<String>()
+		class TrackedActionSet(setName: String, val failInstall: Boolean = false) : ActionSet(setName, apply = {
+			MOUSE_PRESSED {
+				verify { tested += setName; true }
+				onAction { }
+			}
+		}) {
+			override fun preInstallSetup() {
+				lifecycle += "install $name"
+				if (failInstall) throw IllegalStateException("install $name")
+			}
+
+			override fun postRemoveCleanUp() {
+				lifecycle += "remove $name"
+			}
+		}
+
+		val shared = TrackedActionSet("shared")
+		val paint = TrackedActionSet("paint")
+		val fill = TrackedActionSet("fill")
+		val broken = TrackedActionSet("broken", failInstall = true)
+
+		val node = Group()
+		node.installActionSet(shared)
+		node.installActionSet(paint)
+		lifecycle.clear()
+
+		node.swapActionSets(listOf(shared, paint), listOf(shared, fill))
+		assertEquals(listOf("remove paint", "install fill"), lifecycle)
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		assertEquals(listOf("shared", "fill"), tested)
+
+		tested.clear()
+		lifecycle.clear()
+		assertFailsWith<IllegalStateException> { node.swapActionSets(listOf(fill), listOf(paint, broken)) }
+		/* the setup of broken failed, so it isn't cleaned up */
+		assertEquals(listOf("remove fill", "install paint", "install broken", "remove paint", "install fill"), lifecycle)
+		Event.fireEvent(node, mouseEvent(MOUSE_PRESSED))
+		assertEquals(listOf("shared", "fill"), tested)
+
+		/* the handlers are called in the order of old again, also around sets that were kept */
+		val first = TrackedActionSet("first")
+		val last = TrackedActionSet("last")
+		val ordered = Group()
+		listOf(first, shared, last).forEach { ordered.installActionSet(it) }
+		tested.clear()
+		lifecycle.clear()
+		assertFailsWith<IllegalStateException> { ordered.swapActionSets(listOf(first, shared, last), listOf(shared, broken)) }
+		assertEquals(listOf("remove first", "remove last", "install broken", "install first", "install last"), lifecycle)
+		Event.fireEvent(ordered, mouseEvent(MOUSE_PRESSED))
+		assertEquals(listOf("first", "shared", "last"), tested)
+	}
+
+	companion object {
+
+		private fun keyEvent(code: KeyCode, controlDown: Boolean = false) = KeyEvent(KEY_PRESSED, "", "", code, false, controlDown, false, false)
+
+		internal fun mouseEvent(
+			eventType: EventType<MouseEvent>,
+			button: MouseButton = MouseButton.NONE,
+			primaryDown: Boolean = false,
+			secondaryDown: Boolean = false,
+			x: Double = 0.0,
+			y: Double = 0.0,
+		) = MouseEvent(
+			eventType,
+			x, y, x, y,
+			button, 1,
+			false, false, false, false,
+			primaryDown, false, secondaryDown, false, false,
+			false, null
+		)
+	}
+}
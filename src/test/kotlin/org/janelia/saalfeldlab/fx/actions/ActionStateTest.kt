@@ -10,6 +10,8 @@ import org.janelia.saalfeldlab.fx.actions.ActionStateTest.IncrementActionState.C
 import kotlin.test.Test
 import kotlin.test.assertEquals
 import kotlin.test.assertFailsWith
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
 
 class ActionStateTest {
 
@@ -90,6 +92,21 @@ class ActionStateTest {
 
 	}
 
+	@Test
+	fun `compiled state factories are cached and create new states`() {
+		val factory = ActionState.newByReflection<TestState>()
+		assertSame(factory, ActionState.factory(TestState::class.java))
+		assertNotSame(factory(), factory())
+		/* no JVM no-arg constructor, so created via callBy */
+		assertEquals("default", ActionState.newByReflection<SecondaryConstructorState>()().value)
+	}
+
+	class SecondaryConstructorState private constructor(val value: String, @Suppress("unused") val unused: Int) : ActionState {
+		constructor(value: String = "default") : this(value, 0)
+
+		override fun <E : Event> verifyState(action: Action<E>) = Unit
+	}
+
 	internal class IncrementActionState : VerifiablePropertyActionState() {
 
 		private var counter by verifiable("Increment verifiedCount") {
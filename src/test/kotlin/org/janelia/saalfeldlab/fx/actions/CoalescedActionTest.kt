@@ -0,0 +1,68 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.event.Event
+import javafx.scene.Scene
+import javafx.scene.input.MouseEvent.MOUSE_MOVED
+import javafx.scene.layout.Pane
+import javafx.stage.Stage
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.removeActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import org.testfx.framework.junit.ApplicationTest
+import org.testfx.util.WaitForAsyncUtils
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class CoalescedActionTest : ApplicationTest() {
+
+	private lateinit var pane: Pane
+
+	override fun start(stage: Stage) {
+		pane = Pane()
+		stage.scene = Scene(pane, 100.0, 100.0)
+		stage.show()
+	}
+
+	class PositionState : VerifiablePropertyActionState() {
+		var visible by verifiable { true }
+	}
+
+	@Test
+	fun `coalesced events run actions with state`() {
+		val positions = mutableListOf<Double>()
+		val actionSet = ActionSet("coalesced state") {
+			MOUSE_MOVED {
+				coalescePerPulse = true
+				onActionWithState<PositionState> { event -> if (visible) positions += event!!.x }
+			}
+		}
+
+		interact(Runnable {
+			pane.installActionSet(actionSet)
+			for (x in 1..5) Event.fireEvent(pane, mouseEvent(MOUSE_MOVED, x = x.toDouble()))
+		})
+		WaitForAsyncUtils.waitForFxEvents()
+
+		assertEquals(listOf(5.0), positions)
+	}
+
+	@Test
+	fun `coalesced events are dropped when the action set is removed`() {
+		var triggered = 0
+		val actionSet = ActionSet("coalesced removal") {
+			MOUSE_MOVED {
+				coalescePerPulse = true
+				onAction { triggered++ }
+			}
+		}
+
+		interact(Runnable {
+			pane.installActionSet(actionSet)
+			Event.fireEvent(pane, mouseEvent(MOUSE_MOVED))
+			pane.removeActionSet(actionSet)
+		})
+		WaitForAsyncUtils.waitForFxEvents()
+
+		assertEquals(0, triggered)
+	}
+}
@@ -0,0 +1,78 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.event.Event
+import javafx.scene.Scene
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent.DRAG_DETECTED
+import javafx.scene.input.MouseEvent.MOUSE_DRAGGED
+import javafx.scene.input.MouseEvent.MOUSE_PRESSED
+import javafx.scene.input.MouseEvent.MOUSE_RELEASED
+import javafx.scene.layout.Pane
+import javafx.stage.Stage
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import org.testfx.framework.junit.ApplicationTest
+import org.testfx.util.WaitForAsyncUtils
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class DragActionSetTest : ApplicationTest() {
+
+	private lateinit var pane: Pane
+
+	override fun start(stage: Stage) {
+		pane = Pane()
+		stage.scene = Scene(pane, 100.0, 100.0)
+		stage.show()
+	}
+
+	@Test
+	fun `coalesced drags deliver the accumulated delta before release`() {
+		val triggered = mutableListOf<String>()
+		val deltas = mutableListOf<Double>()
+		val dragActionSet = DragActionSet("coalesced drag") {
+			relative = true
+			coalesceDrags = true
+			onDrag { deltas += it.x - startX; triggered += "drag ${it.x}" }
+			onDragReleased { triggered += "released" }
+		}
+
+		interact(Runnable {
+			pane.installActionSet(dragActionSet)
+			Event.fireEvent(pane, mouseEvent(MOUSE_PRESSED, MouseButton.PRIMARY, primaryDown = true))
+			Event.fireEvent(pane, mouseEvent(DRAG_DETECTED, MouseButton.PRIMARY, primaryDown = true))
+			for (x in 1..5)
+				Event.fireEvent(pane, mouseEvent(MOUSE_DRAGGED, MouseButton.PRIMARY, primaryDown = true, x = x.toDouble()))
+			Event.fireEvent(pane, mouseEvent(MOUSE_RELEASED, MouseButton.PRIMARY, x = 5.0))
+		})
+		WaitForAsyncUtils.waitForFxEvents()
+
+		assertEquals(listOf("drag 5.0", "released"), triggered)
+		assertEquals(listOf(5.0), deltas)
+	}
+
+	@Test
+	fun `coalesced drags are delivered on release when the release is rejected`() {
+		val triggered = mutableListOf<String>()
+		val dragActionSet = DragActionSet("rejected release") {
+			coalesceDrags = true
+			onDrag { triggered += "drag ${it.x}" }
+			onDragReleased { triggered += "released" }
+			dragReleaseAction.verify("release rejected") { false }
+		}
+
+		interact(Runnable {
+			pane.installActionSet(dragActionSet)
+			Event.fireEvent(pane, mouseEvent(MOUSE_PRESSED, MouseButton.PRIMARY, primaryDown = true))
+			Event.fireEvent(pane, mouseEvent(DRAG_DETECTED, MouseButton.PRIMARY, primaryDown = true))
+			for (x in 1..3)
+				Event.fireEvent(pane, mouseEvent(MOUSE_DRAGGED, MouseButton.PRIMARY, primaryDown = true, x = x.toDouble()))
+			Event.fireEvent(pane, mouseEvent(MOUSE_RELEASED, MouseButton.PRIMARY, x = 3.0))
+			/* not left for the next pulse */
+			assertEquals(listOf("drag 3.0"), triggered)
+		})
+		WaitForAsyncUtils.waitForFxEvents()
+
+		assertEquals(listOf("drag 3.0"), triggered)
+	}
+}
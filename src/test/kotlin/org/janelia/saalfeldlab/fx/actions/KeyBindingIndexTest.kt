@@ -0,0 +1,36 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyCodeCombination
+import javafx.scene.input.KeyCombination
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.KeyEvent.KEY_PRESSED
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class KeyBindingIndexTest {
+
+	@Test
+	fun `bindings with the same name are indexed separately`() {
+		val save = NamedKeyCombination("save", KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN))
+		val otherSave = NamedKeyCombination("save", KeyCodeCombination(KeyCode.F2))
+		val index = KeyBindingIndex().apply {
+			add(save)
+			add(otherSave)
+		}
+		assertEquals(2, index.bindings.size)
+		assertEquals(listOf(save), index.candidates(KeyEvent(KEY_PRESSED, "", "", KeyCode.S, false, true, false, false)))
+		assertEquals(listOf(otherSave), index.candidates(KeyEvent(KEY_PRESSED, "", "", KeyCode.F2, false, false, false, false)))
+
+		otherSave.primaryCombination = KeyCodeCombination(KeyCode.S)
+		val candidates = index.candidates(KeyEvent(KEY_PRESSED, "", "", KeyCode.S, false, true, false, false))
+		assertTrue(candidates.any { it === save } && candidates.any { it === otherSave })
+
+		index.remove(otherSave)
+		assertEquals(listOf(save), index.bindings.toList())
+		/* no longer followed */
+		otherSave.primaryCombination = KeyCodeCombination(KeyCode.F3)
+		assertEquals(emptyList(), index.candidates(KeyEvent(KEY_PRESSED, "", "", KeyCode.F3, false, false, false, false)))
+	}
+}
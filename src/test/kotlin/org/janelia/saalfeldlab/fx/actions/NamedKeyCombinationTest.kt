@@ -0,0 +1,39 @@
+package org.janelia.saalfeldlab.fx.actions
+
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyCodeCombination
+import javafx.scene.input.KeyCombination
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.KeyEvent.KEY_PRESSED
+import org.janelia.saalfeldlab.fx.event.KeyMask
+import org.janelia.saalfeldlab.fx.event.KeyTracker
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class NamedKeyCombinationTest {
+
+	@Test
+	fun `cached keys follow the primary combination`() {
+		val binding = NamedKeyCombination("save", KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN))
+		val keyMask = binding.keyMask
+		assertSame(keyMask, binding.keyMask)
+		assertEquals(setOf(KeyCode.S, KeyCode.CONTROL), binding.keyCodes)
+		assertEquals(KeyMask.of(KeyCode.CONTROL), binding.modifierMask)
+
+		val tracker = KeyTracker().apply {
+			addKey(KeyCode.CONTROL)
+			addKey(KeyCode.S)
+		}
+		val event = KeyEvent(KEY_PRESSED, "", "", KeyCode.S, false, true, false, false)
+		assertTrue(binding.matches(event, tracker))
+		assertTrue(binding.matches(event, tracker, keysExclusive = false))
+
+		binding.primaryCombination = KeyCodeCombination(KeyCode.S, KeyCombination.ALT_DOWN)
+		assertEquals(KeyMask.of(KeyCode.S, KeyCode.ALT), binding.keyMask)
+		assertFalse(binding.matches(event, tracker))
+		assertFalse(binding.matches(event, tracker, keysExclusive = false))
+	}
+}
@@ -0,0 +1,82 @@
+package org.janelia.saalfeldlab.fx.event
+
+import javafx.event.Event
+import javafx.scene.Group
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.KeyEvent.KEY_PRESSED
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent
+import javafx.scene.input.MouseEvent.MOUSE_PRESSED
+import javafx.scene.input.ScrollEvent
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.installActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSet.Companion.removeActionSet
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import org.janelia.saalfeldlab.fx.midi.MidiFaderEvent
+import org.janelia.saalfeldlab.fx.midi.MidiToggleEvent
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class InputRecordingTest {
+
+	@Test
+	fun `recorded events replay in order with their fields`() {
+		val output = ByteArrayOutputStream()
+		val recorder = InputRecorder(output)
+		/* not at the scene origin, so local and scene coordinates differ */
+		val recorded = Group().apply {
+			translateX = 10.0
+			translateY = 20.0
+			installActionSet(recorder)
+		}
+
+		val events = listOf(
+			KeyEvent(KEY_PRESSED, "a", "a", KeyCode.A, false, true, false, false),
+			mouseEvent(MOUSE_PRESSED, MouseButton.SECONDARY, secondaryDown = true, x = 3.0, y = 4.0),
+			ScrollEvent(
+				ScrollEvent.SCROLL, 1.0, 2.0, 1.0, 2.0, true, false, false, false, false, false,
+				0.0, -40.0, 0.0, -40.0, ScrollEvent.HorizontalTextScrollUnits.NONE, 0.0, ScrollEvent.VerticalTextScrollUnits.LINES, -1.0, 0, null
+			),
+			MidiToggleEvent(7, 1, MidiToggleEvent.BUTTON_TOGGLE),
+			MidiFaderEvent(2, 0.5, MidiFaderEvent.FADER)
+		)
+		events.forEach { Event.fireEvent(recorded, it) }
+		recorded.removeActionSet(recorder)
+		recorder.close()
+		assertEquals(events.size, recorder.recordedCount)
+
+		val replayer = InputReplayer(ByteArrayInputStream(output.toByteArray()))
+		val replayed = mutableListOf<Event>()
+		val target = Group().apply {
+			translateX = 10.0
+			translateY = 20.0
+			addEventHandler(Event.ANY) { replayed += it }
+		}
+		assertEquals(events.size, replayer.replayImmediately(target))
+
+		assertEquals(events.map { it.eventType }, replayed.map { it.eventType })
+		with(replayed[0] as KeyEvent) {
+			assertEquals(KeyCode.A, code)
+			assertEquals(true, isControlDown)
+		}
+		with(replayed[1] as MouseEvent) {
+			assertEquals(MouseButton.SECONDARY, button)
+			assertEquals(true, isSecondaryButtonDown)
+			assertEquals(3.0, sceneX)
+			assertEquals(-7.0, x)
+			assertEquals(-16.0, y)
+		}
+		with(replayed[2] as ScrollEvent) {
+			assertEquals(-40.0, deltaY)
+			assertEquals(-9.0, x)
+			assertEquals(-18.0, y)
+			assertEquals(ScrollEvent.VerticalTextScrollUnits.LINES, textDeltaYUnits)
+			assertEquals(true, isShiftDown)
+		}
+		assertEquals(true, (replayed[3] as MidiToggleEvent).isOn)
+		assertEquals(0.5, (replayed[4] as MidiFaderEvent).value)
+		assertEquals(replayer.events.map { it.nanos }.sorted(), replayer.events.map { it.nanos })
+	}
+}
@@ -0,0 +1,51 @@
+package org.janelia.saalfeldlab.fx.event
+
+import javafx.scene.input.KeyCode
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class KeyTrackerTest {
+
+	@Test
+	fun `key masks and key code queries agree`() {
+		val tracker = KeyTracker()
+		assertTrue(tracker.noKeysActive())
+
+		/* the last and first key codes, to cover both ends of the bitset */
+		val last = KeyCode.entries.last()
+		assertTrue(tracker.addKey(KeyCode.CONTROL))
+		assertTrue(tracker.addKey(last))
+		assertFalse(tracker.addKey(last))
+
+		assertEquals(2, tracker.activeKeyCount())
+		assertTrue(tracker.isKeyDown(last))
+		assertTrue(tracker.areOnlyTheseKeysDown(KeyCode.CONTROL, last))
+		assertTrue(tracker.areOnlyTheseKeysDown(KeyMask.of(last, KeyCode.CONTROL)))
+		assertFalse(tracker.areOnlyTheseKeysDown(KeyMask.of(KeyCode.CONTROL)))
+		assertTrue(tracker.areKeysDown(KeyMask.of(KeyCode.CONTROL)))
+		assertFalse(tracker.areKeysDown(KeyMask.of(KeyCode.CONTROL, KeyCode.entries.first())))
+		assertTrue(tracker.areKeysDownExcept(KeyMask.of(KeyCode.CONTROL, KeyCode.entries.first()), KeyCode.entries.first()))
+		assertEquals(setOf(KeyCode.CONTROL, last), tracker.getActiveKeyCodes(true).toSet())
+
+		assertTrue(tracker.removeKey(KeyCode.CONTROL))
+		assertFalse(tracker.removeKey(KeyCode.CONTROL))
+		assertTrue(tracker.areOnlyTheseKeysDown(last))
+	}
+
+	@Test
+	fun `active key codes are in press order`() {
+		val tracker = KeyTracker()
+		tracker.addKey(KeyCode.Z)
+		tracker.addKey(KeyCode.SHIFT)
+		tracker.addKey(KeyCode.A)
+		tracker.addKey(KeyCode.Z)
+		assertEquals(listOf(KeyCode.Z, KeyCode.SHIFT, KeyCode.A), tracker.getActiveKeyCodes(true))
+		assertEquals(listOf(KeyCode.Z, KeyCode.A), tracker.getActiveKeyCodes(false))
+
+		tracker.removeKey(KeyCode.SHIFT)
+		tracker.addKey(KeyCode.SHIFT)
+		assertEquals(listOf(KeyCode.Z, KeyCode.A, KeyCode.SHIFT), tracker.getActiveKeyCodes(true))
+	}
+}
@@ -0,0 +1,58 @@
+package org.janelia.saalfeldlab.fx.event
+
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent
+import org.janelia.saalfeldlab.fx.actions.ActionSetTest.Companion.mouseEvent
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class MouseTrackerTest {
+
+	@Test
+	fun `history keeps the latest samples`() {
+		val tracker = MouseTracker(historySize = 4)
+		for (i in 0 until 6) tracker.record(i * MILLIS, i.toDouble(), -i.toDouble(), 0)
+
+		assertEquals(4, tracker.sampleCount)
+		assertEquals(5.0, tracker.x(0))
+		assertEquals(-2.0, tracker.y(3))
+		assertEquals(2 * MILLIS, tracker.nanoTime(3))
+		assertFailsWith<IndexOutOfBoundsException> { tracker.x(4) }
+
+		tracker.handle(mouseEvent(MouseEvent.MOUSE_DRAGGED, primaryDown = true, x = 10.0, y = 20.0))
+		assertEquals(10.0, tracker.x(0))
+		assertTrue(tracker.isButtonDown(0, MouseButton.PRIMARY))
+		assertTrue(!tracker.isButtonDown(1, MouseButton.PRIMARY))
+	}
+
+	@Test
+	fun `velocity, acceleration and resampling`() {
+		val tracker = MouseTracker()
+		assertEquals(0.0, tracker.velocityX())
+
+		/* x moves at 1000 px/s, y accelerates at 2000 px/s^2 */
+		for (i in 0..20) {
+			val seconds = i * MILLIS / 1e9
+			tracker.record(i * MILLIS, 1000.0 * seconds, 1000.0 * seconds * seconds, 0)
+		}
+
+		assertEquals(1000.0, tracker.velocityX(), 1e-6)
+		assertEquals(0.0, tracker.accelerationX(), 1e-6)
+		assertEquals(2000.0, tracker.accelerationY(), 1e-6)
+
+		assertEquals(2.5, tracker.xAt(2 * MILLIS + MILLIS / 2), 1e-9)
+		assertEquals(0.0, tracker.xAt(-MILLIS))
+		assertEquals(20.0, tracker.xAt(100 * MILLIS))
+
+		val xs = DoubleArray(3)
+		val ys = DoubleArray(3)
+		tracker.resample(0L, 20 * MILLIS, xs, ys)
+		assertEquals(listOf(0.0, 10.0, 20.0), xs.toList())
+	}
+
+	companion object {
+		private const val MILLIS = 1_000_000L
+	}
+}
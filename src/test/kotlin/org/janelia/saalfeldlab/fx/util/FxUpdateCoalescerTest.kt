@@ -0,0 +1,53 @@
+package org.janelia.saalfeldlab.fx.util
+
+import javafx.application.Platform
+import javafx.beans.property.SimpleIntegerProperty
+import javafx.scene.Scene
+import javafx.scene.layout.Pane
+import javafx.stage.Stage
+import org.testfx.framework.junit.ApplicationTest
+import org.testfx.util.WaitForAsyncUtils
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class FxUpdateCoalescerTest : ApplicationTest() {
+
+	override fun start(stage: Stage) {
+		stage.scene = Scene(Pane(), 100.0, 100.0)
+		stage.show()
+	}
+
+	@Test
+	fun `only the latest update per key is applied on the FX thread`() {
+		val coalescer = FxUpdateCoalescer("test")
+		val property = SimpleIntegerProperty(-1)
+		val values = mutableListOf<Int>()
+		var onFxThread = true
+		property.addListener { _, _, value ->
+			onFxThread = onFxThread && Platform.isFxApplicationThread()
+			values += value.toInt()
+		}
+		val order = mutableListOf<String>()
+
+		thread {
+			for (i in 0 until 1_000) {
+				coalescer.set(property, i)
+				coalescer.update("first") { order += "first" }
+				coalescer.update("second") { order += "second" }
+			}
+		}.join()
+
+		WaitForAsyncUtils.waitFor(5, TimeUnit.SECONDS) { property.value == 999 }
+		WaitForAsyncUtils.waitForFxEvents()
+		assertTrue(onFxThread)
+		assertTrue(values.size < 1_000)
+		assertEquals(values.sorted(), values)
+		assertEquals(3_000, coalescer.submittedCount)
+		assertEquals(coalescer.submittedCount - coalescer.appliedCount, coalescer.coalescedCount)
+		assertEquals(order.size / 2, order.count { it == "first" })
+		assertEquals(0, coalescer.pendingCount)
+	}
+}